@@ -51,11 +51,24 @@
  */
 
 import java.io.*;
+import java.lang.management.ManagementFactory;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
 
 import static java.lang.Math.*;
 
@@ -394,12 +407,28 @@ class Point implements Serializable {
 }
 
 /**
- * Serializable class for managing game state persistence.
+ * Class for managing game state persistence.
  * This class allows saving and loading the game's state, including high scores, game history,
  * and current game progress.
+ * The state is stored in a compact binary format holding only the facts of every game: its code, the guesses
+ * and their feedback as packed numbers, dates, flags and scores. Solvers and text boxes are rebuilt when loading.
+ * Files written by older versions with Java serialization are still read, see {@link LegacyObjectInputStream}.
  */
-class GameSerializer implements Serializable {
+class GameSerializer {
+    static final String FILE_PATH = "GameState.bin"; // The file the game state is saved to.
+    static final String LEGACY_FILE_PATH = "GameState.ser"; // The file versions up to v1.34 saved the game state to.
+
+    private static final int MAGIC = 0x425A4753; // "BZGS", starts every save file.
+    static final int VERSION = 7; // The version of the save format, follows the magic number. Version 1 had no journal epoch, versions up to 2 kept the history as text, version 3 had no statistics, version 4 no leaderboard, version 5 no game ids and versions up to 6 stored the codes left to the evil code maker.
+    private static final int SERIALIZATION_MAGIC = 0xACED0005; // Starts files written with Java serialization.
+
+    static final int WON = 1, LOST = 2, AI = 4, EVIL = 8; // Flags of a saved game.
+
+    long journal_epoch = 0; // Identifies the journal continuing this state, see GameJournal.
     long highscore = 0; // The highest score achieved.
+    PlayerStats stats = new PlayerStats(); // Statistics of the finished games.
+    boolean stats_read = false; // Whether the statistics were read, files from before version 4 have none.
+    boolean top_read = false; // Whether the leaderboard was read, files from before version 5 have none.
     ArrayList<Game> games = new ArrayList<Game>(); // List of all games played.
     Game current_game; // The current active game.
     CursorStyles cursorStyles; // The style of the cursor used in the game.
@@ -430,507 +459,2020 @@ class GameSerializer implements Serializable {
      * @throws IOException if an error occurs during file writing.
      */
     public static void saveGameState(GameSerializer gameState, String filePath) throws IOException {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(filePath))) {
-            oos.writeObject(gameState); // Serialize the GameSerializer object.
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filePath)))) {
+            writeGameState(out, gameState);
         }
     }
 
     /**
-     * Loads the game state from a file.
+     * Writes a game state in the format of the save file.
      *
-     * @param filePath the path of the file containing the saved game state.
-     * @return the loaded GameSerializer object.
-     * @throws IOException            if an error occurs during file reading.
-     * @throws ClassNotFoundException if the class definition is not found.
-     */
-    public static GameSerializer loadGameState(String filePath) throws IOException, ClassNotFoundException {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(filePath))) {
-            return (GameSerializer) ois.readObject(); // Deserialize and return the GameSerializer object.
+     * @param out       the stream to write to.
+     * @param gameState the game state.
+     * @throws IOException if an error occurs during writing.
+     */
+    static void writeGameState(DataOutputStream out, GameSerializer gameState) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(gameState.journal_epoch);
+        out.writeLong(gameState.highscore);
+        out.writeByte(gameState.cursorStyles == null ? -1 : gameState.cursorStyles.getIndex());
+        ArrayList<String> command_history = gameState.command_history == null ? new ArrayList<>() : gameState.command_history;
+        out.writeInt(command_history.size());
+        for (String command : command_history) {
+            writeText(out, command);
         }
-    }
-}
-
-/**
- * Main class for the BzGuessGame application.
- * This class contains the game's entry point, configurations, and core methods.
- */
-class AVandiniEliaBzGuessGame {
-    public static final String Author = "Eia Vandini"; // The author of the game.
-    public static final String Version = "v1.34"; // The current version of the game.
-
-    static char[] options = {'A', 'B', 'C', 'D', 'E', 'F'}; // Possible characters in the secret code.
-    static CursorStyles cursorStyle = CursorStyles.BLINKING_BAR; // Default cursor style.
-    static long highscore = 0; // Current high score.
-    static Command[] comands = new Command[]{
-            new CommandHelp(), new CommandKeybinds(), new CommandP(), new CommandSetCode(), new CommandRemains(),
-            new CommandBuy(), new CommandQuit(), new CommandNew(), new CommandHistory(),
-            new CommandRules(), new CommandClose(), new CommandBuyAI(), new CommandAI(),
-            new CommandUnlimitedAttempts(), new CommandChangeCursorStyle()
-    }; // Array of game commands.
-
-    static KeyBind[] global_keybinds = new KeyBind[]{new KeyBindClose(), new KeyBindNew()}; // Global key bindings.
-    static ArrayList<Game> games = new ArrayList<Game>(); // List of games played.
-    static Game current_game; // The current game instance.
-    static GameSerializer gameSerailizer = new GameSerializer(highscore, games, current_game, cursorStyle, TextBox.command_history); // Serializer for game state.
-    static Thread kyThread = new KeyListenenThread(); // Thread for key listening.
-
-    /**
-     * The main method for the application.
-     * Initializes the game, loads saved state, and starts the key listening thread.
-     *
-     * @param args command-line arguments (not used).
-     */
-    public static void main(String[] args) {
-        AVandiniEliaBzGuessGame.setCursorStyle(cursorStyle);
-        greeting();
-        kyThread.start();
-        loadGamestate();
-        if (current_game.won || current_game.lost) {
-            newGame();
+        out.writeInt(gameState.games.size());
+        for (Game game : gameState.games) {
+            writeGame(out, game);
         }
-        current_game.gameloop();
-        saveGameState();
+        // the current game is normally one of the games, otherwise it follows them
+        int current = gameState.current_game == null ? -1 : gameState.games.indexOf(gameState.current_game);
+        if (gameState.current_game != null && current < 0) {
+            current = gameState.games.size();
+        }
+        out.writeInt(current);
+        if (current == gameState.games.size()) {
+            writeGame(out, gameState.current_game);
+        }
+        gameState.stats.write(out);
     }
 
     /**
-     * Loads the game state from the saved file if it exists.
-     * If the game state cannot be loaded or is invalid, a new game is started.
+     * Loads the game state from a file, in the current format or as written by older versions.
+     *
+     * @param filePath the path of the file containing the saved game state.
+     * @return the loaded GameSerializer object.
+     * @throws IOException            if an error occurs during file reading or the file is not a valid save file.
+     * @throws ClassNotFoundException if an old file refers to a class that doesn't exist.
      */
-    static void loadGamestate() {
-        File f = new File("GameState.ser");
-        if (f.exists()) {
-            try {
-                gameSerailizer = GameSerializer.loadGameState("GameState.ser");
-                highscore = gameSerailizer.highscore;
-                games = gameSerailizer.games;
-                current_game = gameSerailizer.current_game;
-                TextBox.command_history = gameSerailizer.command_history;
-            } catch (Exception e) {
-                setAttribute(FColors.YELLOW);
-                System.out.println("WARNING: unable to read gamestate (" + Arrays.toString(e.getStackTrace()) + ")");
-                resetAttrributes();
-                newGame();
+    public static GameSerializer loadGameState(String filePath) throws IOException, ClassNotFoundException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filePath)))) {
+            int magic = in.readInt();
+            if (magic == SERIALIZATION_MAGIC) {
+                return loadLegacyGameState(filePath);
             }
-        } else {
-            newGame();
+            if (magic != MAGIC) {
+                throw new IOException("not a save file");
+            }
+            int version = in.readInt();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("unsupported save file version " + version);
+            }
+            long journal_epoch = version >= 2 ? in.readLong() : 0;
+            long highscore = in.readLong();
+            CursorStyles cursorStyles = CursorStyles.getCursorStyles(in.readByte());
+            ArrayList<String> command_history = new ArrayList<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                command_history.add(readText(in));
+            }
+            ArrayList<Game> games = new ArrayList<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                games.add(readGame(in, version));
+            }
+            int current = in.readInt();
+            Game current_game;
+            if (current == games.size()) {
+                current_game = readGame(in, version);
+            } else if (current >= 0 && current < games.size()) {
+                current_game = games.get(current);
+            } else if (current == -1) {
+                current_game = null;
+            } else {
+                throw new IOException("corrupted save file");
+            }
+            GameSerializer res = new GameSerializer(highscore, games, current_game, cursorStyles, command_history);
+            res.journal_epoch = journal_epoch;
+            if (version >= 4) {
+                res.stats.read(in, version >= 5);
+                res.stats_read = true;
+                res.top_read = version >= 5;
+            }
+            return res;
         }
     }
 
     /**
-     * Saves the current game state to a file.
-     * If saving fails, a warning message is displayed.
-     */
-    static void saveGameState() {
-        gameSerailizer.highscore = highscore;
-        gameSerailizer.games = games;
-        gameSerailizer.current_game = current_game;
-        gameSerailizer.command_history = TextBox.command_history;
-        try {
-            GameSerializer.saveGameState(gameSerailizer, "GameState.ser");
-        } catch (IOException e) {
-            setAttribute(FColors.YELLOW);
-            System.out.println("WARNING: unable to save gamestate (" + e.getMessage() + ")");
-            resetAttrributes();
+     * Replaces a file by another one, which is atomic where the file system allows it.
+     *
+     * @param tmp  the new content, gone afterwards.
+     * @param file the file to replace.
+     * @throws IOException if the file can't be replaced.
+     */
+    static void replaceFile(File tmp, File file) throws IOException {
+        if (!tmp.renameTo(file)) {
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                throw new IOException("unable to replace " + file);
+            }
         }
     }
 
     /**
-     * Displays a greeting message to the player at the start of the game.
-     * Also provides help by executing the help command.
+     * Writes the facts of a game.
+     *
+     * @param out  the stream to write to.
+     * @param game the game.
+     * @throws IOException if an error occurs during writing.
      */
-    static void greeting() {
-        System.out.println("\rProgrammed by Vandini Elia");
-        new CommandHelp().exec(new String[]{""});
-        AVandiniEliaBzGuessGame.eraseLinesUp(2);
+    static void writeGame(DataOutputStream out, Game game) throws IOException {
+        Variant variant = game.variant;
+        out.writeByte(variant.colors);
+        out.writeByte(variant.pegs);
+        out.writeLong(game.start_date.getTime());
+        out.writeLong(game.id);
+        writeProgress(out, game, 0);
+        game.history.write(out, 0);
     }
 
     /**
-     * Displays a win screen message when the player successfully guesses the secret code.
-     * Also prompts the player to decide whether to play again.
+     * Returns the flags a game is saved with.
+     *
+     * @param game the game.
+     * @return the combination of {@link #WON}, {@link #LOST}, {@link #AI} and {@link #EVIL} that applies to the game.
      */
-    static void winScreen() {
-        System.out.println("\rCongratulations, Score is " + AVandiniEliaBzGuessGame.current_game.score + ", (Highscore: " + highscore + ")");
-        askIfPlayAgain();
+    static int flags(Game game) {
+        return (game.won ? WON : 0) | (game.lost ? LOST : 0) | (game.ai ? AI : 0) | (game.evil_codes != null ? EVIL : 0);
     }
 
     /**
-     * Displays a hypothetical win screen message when the AI successfully completes the game.
-     * Also prompts the player to decide whether to play again.
-     */
-    static void aiWinScreen() {
-        System.out.println("\rHypothetical score is " + AVandiniEliaBzGuessGame.current_game.score + ", (Highscore: " + highscore + ")");
-        askIfPlayAgain();
+     * Writes what can change during a game: the code, counters, flags and the guesses starting from a given one.
+     * The codes left to the evil code maker aren't written, they follow from the guesses and the revealed letters.
+     *
+     * @param out   the stream to write to.
+     * @param game  the game.
+     * @param first the index of the first guess to write.
+     * @throws IOException if an error occurs during writing.
+     */
+    static void writeProgress(DataOutputStream out, Game game, int first) throws IOException {
+        Variant variant = game.variant;
+        out.writeInt(variant.encode(game.code));
+        out.writeLong(game.attempts_left);
+        out.writeLong(game.score);
+        out.writeByte(flags(game));
+        out.write(new String(game.discovered_chars).getBytes("UTF-8"));
+        out.writeInt(game.guesses.size() - first);
+        for (int i = first; i < game.guesses.size(); i++) {
+            out.writeInt(variant.encode(game.guesses.get(i)));
+            out.writeShort(variant.pack(game.matches.get(i)));
+        }
     }
 
     /**
-     * Displays a loss screen message when the player fails to guess the secret code.
-     * Also reveals the correct code and prompts the player to decide whether to play again.
+     * Reads the facts of a game and rebuilds it.
+     *
+     * @param in      the stream to read from.
+     * @param version the version of the save format the game was written in.
+     * @return the game, with a new solver and text box.
+     * @throws IOException if an error occurs during reading or the game is invalid.
      */
-    static void loosescreen() {
-        System.out.println("\rYou lost! Secret code was " + Arrays.toString(AVandiniEliaBzGuessGame.current_game.code) + ".");
-        askIfPlayAgain();
+    static Game readGame(DataInputStream in, int version) throws IOException {
+        Variant variant;
+        try {
+            variant = new Variant(in.readUnsignedByte(), in.readUnsignedByte());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("invalid variant");
+        }
+        Game game = new Game();
+        game.variant = variant;
+        game.solver = new Solver(variant); // catches up with the game's guesses on its next use
+        game.start_date = new Date(in.readLong());
+        if (version >= 6) {
+            game.id = in.readLong();
+        }
+        game.guesses = new ArrayList<>();
+        game.matches = new ArrayList<>();
+        game.discovered_chars = null; // nothing is revealed yet
+        game.evil_codes = null;
+        readProgress(in, game, version);
+        game.history = new GameHistory(variant);
+        if (version >= 3) {
+            game.history.read(in);
+        } else {
+            game.history.text(readText(in));
+        }
+        if (version < 6) {
+            game.id = legacyId(game);
+        }
+        return game;
     }
 
     /**
-     * Displays a loss screen message when the AI fails to complete the game.
-     * Also reveals the correct code and prompts the player to decide whether to play again.
+     * Derives the id of a game from a version without game ids, from everything that is known about it.
+     * The same game gets the same id wherever it is read from, so a game that already is in the archive is recognized.
+     *
+     * @param game the game.
+     * @return the id of the game.
      */
-    static void aiLooseScreen() {
-        System.out.println("\rNot even the AI could save you☠\uFE0F. Secret code was " + Arrays.toString(AVandiniEliaBzGuessGame.current_game.code) + ".");
-        askIfPlayAgain();
+    static long legacyId(Game game) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        game.id = 0;
+        try {
+            writeGame(new DataOutputStream(bytes), game);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // writing to memory doesn't fail
+        }
+        long hash = 0xCBF29CE484222325L; // 64 bit FNV-1a
+        for (byte b : bytes.toByteArray()) {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001B3L;
+        }
+        return hash;
     }
 
     /**
-     * Prompts the player to decide whether to play another game.
-     * Handles key inputs for "Yes" or "No" options and executes the appropriate action.
-     */
-    static void askIfPlayAgain() {
-        AtomicBoolean loop = new AtomicBoolean(true);
-        AtomicBoolean cancel = new AtomicBoolean(false);
-        AtomicInteger seleciton = new AtomicInteger();
-
-        KeyListenenThread.keymap.clear();
-        KeyListenenThread.keymap.put(KeyCodes.ENTER.getCode(), n -> loop.set(false));
-        KeyListenenThread.keymap.put(KeyCodes.RIGHT_ARROW.getCode(), n -> seleciton.getAndIncrement());
-        KeyListenenThread.keymap.put(KeyCodes.LEFT_ARROW.getCode(), n -> seleciton.getAndDecrement());
-
-        AVandiniEliaBzGuessGame.hideCursor();
-        System.out.println("\rWant to play again?");
-        System.out.println("\r");
-
-        while (loop.get()) {
-
-            System.out.print("    ");
-            if (seleciton.get() == 0) {
-                AVandiniEliaBzGuessGame.setAttribute(TextAttributes.INVERSE);
+     * Reads what {@link #writeProgress(DataOutputStream, Game, int)} wrote into a game, adding the guesses to the ones it has.
+     * In evil games the codes left to the evil code maker are narrowed down by the new guesses and revealed letters.
+     *
+     * @param in      the stream to read from.
+     * @param game    the game.
+     * @param version the version of the save format the progress was written in.
+     * @throws IOException if an error occurs during reading or the data is invalid.
+     */
+    static void readProgress(DataInputStream in, Game game, int version) throws IOException {
+        Variant variant = game.variant;
+        game.code = variant.decode(readCode(in, variant));
+        game.attempts_left = in.readLong();
+        game.score = in.readLong();
+        int flags = in.readByte();
+        game.won = (flags & WON) != 0;
+        game.lost = (flags & LOST) != 0;
+        game.ai = (flags & AI) != 0;
+        char[] known = game.discovered_chars;
+        int first = game.guesses.size();
+        byte[] discovered = new byte[variant.pegs];
+        in.readFully(discovered);
+        game.discovered_chars = new String(discovered, "UTF-8").toCharArray();
+        for (int i = in.readInt(); i > 0; i--) {
+            game.guesses.add(variant.decode(readCode(in, variant)));
+            int feedback = in.readUnsignedShort();
+            if (feedback >= variant.feedback_count) {
+                throw new IOException("invalid feedback");
             }
-            AVandiniEliaBzGuessGame.setAttribute(TextAttributes.BRIGHT);
-            System.out.print('Y');
-            AVandiniEliaBzGuessGame.setAttribute(ResetTextAttributes.RESET_BRIGHT);
-            System.out.print("es");
-            AVandiniEliaBzGuessGame.resetAttrributes();
-            System.out.print("/");
-            if (seleciton.get() == 1) {
-                AVandiniEliaBzGuessGame.setAttribute(TextAttributes.INVERSE);
+            game.matches.add(variant.toPoint(feedback));
+        }
+        CandidateSet evil_codes = null;
+        if ((flags & EVIL) != 0 && version < 7) {
+            evil_codes = new CandidateSet(variant.code_count);
+            for (int i = 0; i < evil_codes.words.length; i++) {
+                evil_codes.words[i] = in.readLong();
             }
-            AVandiniEliaBzGuessGame.setAttribute(TextAttributes.BRIGHT);
-            System.out.print('N');
-            AVandiniEliaBzGuessGame.setAttribute(ResetTextAttributes.RESET_BRIGHT);
-            System.out.print("o");
-            AVandiniEliaBzGuessGame.resetAttrributes();
-
-
-            while (!AVandiniEliaBzGuessGame.KeyHandling()) {
-                AVandiniEliaBzGuessGame.wait(10);
+        }
+        int code = variant.encode(game.code);
+        for (int i = 0; i < game.guesses.size(); i++) {
+            if (variant.feedback(code, variant.encode(game.guesses.get(i))) != variant.pack(game.matches.get(i))) {
+                throw new IOException("feedback doesn't match the code");
             }
-            if (seleciton.get() < 0) {
-                seleciton.set(1);
+        }
+        for (int i = 0; i < variant.pegs; i++) {
+            if (game.discovered_chars[i] != '_') {
+                if (game.discovered_chars[i] != game.code[i]) {
+                    throw new IOException("revealed letter doesn't match the code");
+                }
+                if (known == null || known[i] == '_') {
+                    game.solver.revealPosition(i, game.discovered_chars[i]); // bought letters aren't among the guesses
+                }
             }
-            if (seleciton.get() > 1) {
-                seleciton.set(0);
+        }
+        if ((flags & EVIL) == 0 || evil_codes != null) {
+            game.evil_codes = evil_codes;
+            return;
+        }
+        if (game.evil_codes == null) { // nothing was narrowed down yet
+            game.evil_codes = CodeUniverse.of(variant).all.copy();
+            first = 0;
+            known = null;
+        }
+        FeedbackTable table = FeedbackTable.of(variant);
+        for (int i = first; i < game.guesses.size(); i++) {
+            int guess = variant.encode(game.guesses.get(i));
+            int feedback = variant.pack(game.matches.get(i));
+            for (int c = game.evil_codes.nextSetBit(0); c >= 0; c = game.evil_codes.nextSetBit(c + 1)) {
+                if (table.feedback(guess, c) != feedback) {
+                    game.evil_codes.remove(c);
+                }
             }
-            System.out.println();
-            AVandiniEliaBzGuessGame.eraseLinesUp(1);
         }
-        AVandiniEliaBzGuessGame.showCursor();
-        AVandiniEliaBzGuessGame.eraseLinesUp(2);
-        if (seleciton.get() == 0) {
-            newGame();
-        } else {
-            System.out.println("\n\rSee you soon!\r");
-            new CommandClose().exec(new String[]{});
-
+        for (int i = 0; i < variant.pegs; i++) {
+            if (game.discovered_chars[i] != '_' && (known == null || known[i] == '_')) {
+                game.evil_codes.and(table.positionMask(i, game.discovered_chars[i]));
+            }
         }
     }
 
     /**
-     * Starts a new game by creating a new instance of the Game class.
-     * Adds the new game to the list of games and sets it as the current game.
+     * Reads a packed code and checks that it belongs to a variant.
      *
-     * @return the new Game instance.
-     */
-    static Game newGame() {
-        Game g = new Game();
-        games.add(g);
-        current_game = g;
-        g.startGame();
-        return g;
+     * @param in      the stream to read from.
+     * @param variant the variant.
+     * @return the packed code.
+     * @throws IOException if an error occurs during reading or the code is invalid.
+     */
+    private static int readCode(DataInputStream in, Variant variant) throws IOException {
+        int code = in.readInt();
+        if (code < 0 || code >= variant.code_count) {
+            throw new IOException("invalid code");
+        }
+        return code;
     }
 
     /**
-     * Erases the current line in the terminal.
-     * Clears the line and resets the cursor to the beginning of the line.
+     * Writes a text of any length as UTF-8, preceded by its length in bytes.
+     *
+     * @param out  the stream to write to.
+     * @param text the text.
+     * @throws IOException if an error occurs during writing.
      */
-    static void eraseLine() {
-        System.out.print("\u001b[2K\r");
+    static void writeText(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
     }
 
     /**
-     * Erases a specified number of lines above the current cursor position.
-     * Moves the cursor up and clears lines in the terminal.
+     * Reads a text written by {@link #writeText(DataOutputStream, String)}.
      *
-     * @param lines the number of lines to erase.
-     */
-    static void eraseLinesUp(int lines) {
-        if (lines == 0) {
-            return;
+     * @param in the stream to read from.
+     * @return the text.
+     * @throws IOException if an error occurs during reading.
+     */
+    static String readText(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("invalid text length");
         }
-        moveCursor(lines, CursorMoveDirection.UPX);
-        System.out.print("\u001b[0J");
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
     }
 
     /**
-     * Erases all lines from the current cursor position to the end of the screen.
+     * Loads a game state written with Java serialization by versions up to v1.34 and converts it.
+     *
+     * @param filePath the path of the file.
+     * @return the converted game state.
+     * @throws IOException            if an error occurs during file reading.
+     * @throws ClassNotFoundException if the file refers to a class that doesn't exist.
      */
-    static void eraseLinesToEndOfScreen() {
-        System.out.print("\u001b[0J");
+    static GameSerializer loadLegacyGameState(String filePath) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new LegacyObjectInputStream(new FileInputStream(filePath))) {
+            Object state = ois.readObject();
+            if (!(state instanceof LegacyGameSerializer legacy)) {
+                throw new IOException("not a save file");
+            }
+            IdentityHashMap<LegacyGame, Game> converted = new IdentityHashMap<>();
+            ArrayList<Game> games = new ArrayList<>();
+            if (legacy.games != null) {
+                for (LegacyGame game : legacy.games) {
+                    games.add(converted.computeIfAbsent(game, LegacyGame::toGame));
+                }
+            }
+            Game current_game = legacy.current_game == null ? null : converted.computeIfAbsent(legacy.current_game, LegacyGame::toGame);
+            return new GameSerializer(legacy.highscore, games, current_game, legacy.cursorStyles,
+                    legacy.command_history == null ? new ArrayList<>() : legacy.command_history);
+        }
     }
+}
+
+/**
+ * Keeps the game state on disk without rewriting all of it every turn.
+ * The state lives in a snapshot ({@link GameSerializer#FILE_PATH}) followed by a journal. Saving appends what
+ * changed since the last save to the journal: new games, the current game's new guesses, counters and history,
+ * the highscore, the statistics and new commands. Once the journal grows past {@link #COMPACT_BYTES} a new snapshot is written
+ * and the journal starts over. Both carry the same epoch, so a journal from before the last snapshot is ignored.
+ * Every record ends with a checksum, a record cut off by a crash ends the replay.
+ * <p>
+ * Saving has two halves: {@link #record(GameSerializer)} turns the changes into bytes on the thread that owns the
+ * game state, {@link #write()} puts everything recorded so far on disk and may run on any thread.
+ */
+class GameJournal {
+    static final String FILE_PATH = "GameState.journal"; // The file the journal is written to.
+    static final long COMPACT_BYTES = 1 << 20; // Size of the journal after which a new snapshot is written.
+
+    private static final int MAGIC = 0x425A474A; // "BZGJ", starts every journal.
+    private static final int VERSION = 5; // The version of the journal format, follows the magic number. Version 1 kept the history as text, version 2 had no leaderboard, version 3 no game ids and versions up to 4 stored the codes left to the evil code maker.
+
+    private static final int GAME = 1; // A whole game, new or replacing the one at its index.
+    private static final int PROGRESS = 2; // The new guesses, counters and history of a game.
+    private static final int CURRENT = 3; // The index of the current game.
+    private static final int HIGHSCORE = 4; // The highscore.
+    private static final int COMMANDS = 5; // Commands added to the front of the command history.
+    private static final int STATS = 6; // The statistics of the player.
+
+    private static final int HEADER_BYTES = 16; // The size of the journal's header.
+
+    private static final Object io = new Object(); // Held while writing, separately so that recording doesn't wait for the disk.
+    private static DataOutputStream out; // The open journal, null until the first snapshot of this run is written.
+
+    private static boolean started; // Whether a snapshot was recorded and the following changes can go to the journal.
+    private static long size; // The size of the journal in bytes, including what is not written yet.
+    private static byte[] pending_snapshot; // A snapshot waiting to be written, null if there is none.
+    private static long pending_epoch; // The epoch of the pending snapshot.
+    private static final ByteArrayOutputStream pending_records = new ByteArrayOutputStream(); // Records waiting to be written, after the pending snapshot if there is one.
 
     /**
-     * Sets a specific terminal text attribute.
+     * What the journal already holds of a game.
      *
-     * @param attr the attribute to set, represented as an AbstarctAttributes instance.
+     * @param index   the index of the game.
+     * @param guesses the number of guesses.
+     * @param history the history.
+     * @param events  the number of events of the history.
      */
-    static void setAttribute(AbstarctAttributes attr) {
-        System.out.printf("\u001b[%dm", attr.getIndex());
+    private record Mark(int index, int guesses, GameHistory history, int events) {
     }
 
+    private static final IdentityHashMap<Game, Mark> marks = new IdentityHashMap<>(); // The games the journal is up to date with.
+    private static int game_count; // The number of games in the journal.
+    private static Game current_game; // The current game in the journal.
+    private static long highscore; // The highscore in the journal.
+    private static int command_count; // The number of commands in the journal.
+    private static String first_command; // The first command in the journal, the only one that can change.
+    private static PlayerStats stats; // The statistics in the journal.
+    private static long stats_changes; // The number of changes of the statistics in the journal.
+
     /**
-     * Sets multiple terminal text attributes at once.
+     * Records what changed in a game state since the last call, or a new snapshot if needed.
+     * Nothing is written until {@link #write()}.
      *
-     * @param attr an array of attributes to set.
+     * @param state the game state.
+     * @throws IOException if the changes can't be encoded.
      */
-    static void setAttribute(AbstarctAttributes[] attr) {
-        for (AbstarctAttributes a : attr) {
-            setAttribute(a);
+    static synchronized void record(GameSerializer state) throws IOException {
+        if (!started || size > COMPACT_BYTES || state.games.size() < game_count) {
+            compact(state);
+            return;
         }
-    }
-
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        for (int i = game_count; i < state.games.size(); i++) {
+            writeGame(records, i, state.games.get(i));
+        }
+        game_count = state.games.size();
+        if (current_game != state.current_game) {
+            if (current_game != null && marks.containsKey(current_game)) {
+                writeProgress(records, current_game); // whatever happened to the old game before it was left
+            }
+            if (!marks.containsKey(state.current_game)) {
+                compact(state); // not one of the games
+                return;
+            }
+            current_game = state.current_game;
+            write(records, CURRENT, data -> data.writeInt(marks.get(current_game).index()));
+        }
+        writeProgress(records, current_game);
+        if (highscore != state.highscore) {
+            highscore = state.highscore;
+            write(records, HIGHSCORE, data -> data.writeLong(highscore));
+        }
+        if (stats != state.stats || stats_changes != state.stats.changes) {
+            stats = state.stats;
+            stats_changes = stats.changes;
+            write(records, STATS, stats::write);
+        }
+        ArrayList<String> commands = state.command_history;
+        int added = commands.size() - command_count;
+        if (added < 0) {
+            compact(state);
+            return;
+        }
+        if (added > 0 || !commands.isEmpty() && !commands.getFirst().equals(first_command)) {
+            int changed = min(added + 1, commands.size());
+            write(records, COMMANDS, data -> {
+                data.writeInt(added);
+                data.writeInt(changed);
+                for (int i = 0; i < changed; i++) {
+                    GameSerializer.writeText(data, commands.get(i));
+                }
+            });
+            command_count = commands.size();
+            first_command = commands.getFirst();
+        }
+        records.writeTo(pending_records);
+        size += records.size();
+    }
+
     /**
-     * Sets a 8 bit color in foreground.
+     * Writes everything recorded so far: the pending snapshot, replacing the old one and starting a new journal,
+     * then the pending records. If writing fails the next {@link #record(GameSerializer)} starts over with a snapshot.
      *
-     * @param color the color to set.
-     */
-    static void set8bitForeground(int color) {
-        System.out.printf("\u001b[38;5;%dm", color);
+     * @throws IOException if an error occurs during writing.
+     */
+    static void write() throws IOException {
+        synchronized (io) {
+            byte[] snapshot;
+            long epoch;
+            byte[] records;
+            synchronized (GameJournal.class) {
+                snapshot = pending_snapshot;
+                epoch = pending_epoch;
+                records = pending_records.toByteArray();
+                pending_snapshot = null;
+                pending_records.reset();
+            }
+            try {
+                if (snapshot != null) {
+                    if (out != null) {
+                        out.close();
+                        out = null;
+                    }
+                    File tmp = new File(GameSerializer.FILE_PATH + ".tmp");
+                    try (FileOutputStream file = new FileOutputStream(tmp)) {
+                        file.write(snapshot);
+                    }
+                    GameSerializer.replaceFile(tmp, new File(GameSerializer.FILE_PATH));
+                    out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FILE_PATH)));
+                    out.writeInt(MAGIC);
+                    out.writeInt(VERSION);
+                    out.writeLong(epoch);
+                }
+                if (out != null) {
+                    out.write(records);
+                    out.flush();
+                } // otherwise an earlier write failed and these records are part of the next snapshot
+            } catch (IOException e) {
+                if (out != null) {
+                    out.close();
+                    out = null;
+                }
+                synchronized (GameJournal.class) {
+                    started = false;
+                }
+                throw e;
+            }
+        }
     }
 
     /**
-     * Sets a 8 bit color in background.
+     * Adds a whole game to the records and marks it.
      *
-     * @param color the color to set.
+     * @param records the records of the save.
+     * @param index   the index of the game.
+     * @param game    the game.
+     * @throws IOException if an error occurs during writing.
      */
-    static void set8bitBackground(int color) {
-        System.out.printf("\u001b[48;5;%dm", color);
+    private static void writeGame(ByteArrayOutputStream records, int index, Game game) throws IOException {
+        write(records, GAME, data -> {
+            data.writeInt(index);
+            GameSerializer.writeGame(data, game);
+        });
+        marks.put(game, new Mark(index, game.guesses.size(), game.history, game.history.size()));
     }
 
+    /**
+     * Adds what changed in a game since it was last written to the records,
+     * or the whole game if it changed in other ways than going on.
+     *
+     * @param records the records of the save.
+     * @param game    the game, already marked.
+     * @throws IOException if an error occurs during writing.
+     */
+    private static void writeProgress(ByteArrayOutputStream records, Game game) throws IOException {
+        Mark mark = marks.get(game);
+        if (game.guesses.size() < mark.guesses() || game.history != mark.history() || game.history.size() < mark.events()) {
+            writeGame(records, mark.index(), game);
+            return;
+        }
+        write(records, PROGRESS, data -> {
+            data.writeInt(mark.index());
+            GameSerializer.writeProgress(data, game, mark.guesses());
+            game.history.write(data, mark.events());
+        });
+        marks.put(game, new Mark(mark.index(), game.guesses.size(), game.history, game.history.size()));
+    }
 
     /**
-     * Resets all text attributes in the terminal to default.
+     * Something that writes the content of a record.
      */
-    static void resetAttrributes() {
-        setAttribute(TextAttributes.RESET);
+    private interface RecordWriter {
+        /**
+         * Writes the content.
+         *
+         * @param data the stream to write to.
+         * @throws IOException if an error occurs during writing.
+         */
+        void write(DataOutputStream data) throws IOException;
     }
 
     /**
-     * Clears the entire terminal screen and moves the cursor to the top-left corner.
+     * Adds a record: its type, the length of its content, the content and the checksum of the content.
+     *
+     * @param records the records of the save.
+     * @param type    the type of the record.
+     * @param content writes the content.
+     * @throws IOException if an error occurs during writing.
      */
-    static void clearScreen() {
-        System.out.print("\u001b[H\u001b[2J");
+    private static void write(ByteArrayOutputStream records, int type, RecordWriter content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        content.write(new DataOutputStream(bytes));
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        DataOutputStream data = new DataOutputStream(records);
+        data.writeByte(type);
+        data.writeInt(bytes.size());
+        bytes.writeTo(data);
+        data.writeInt((int) crc.getValue());
     }
 
     /**
-     * Hides the terminal cursor to enhance display aesthetics.
-     */
-    static void hideCursor() {
-        System.out.print("\u001b[?25l");
+     * Records a new snapshot of the game state, replacing whatever was pending, and starts a new journal after it.
+     *
+     * @param state the game state.
+     * @throws IOException if the game state can't be encoded.
+     */
+    private static void compact(GameSerializer state) throws IOException {
+        state.journal_epoch = new Random().nextLong();
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        GameSerializer.writeGameState(new DataOutputStream(snapshot), state);
+        pending_snapshot = snapshot.toByteArray();
+        pending_epoch = state.journal_epoch;
+        pending_records.reset();
+        size = HEADER_BYTES;
+        started = true;
+
+        marks.clear();
+        game_count = state.games.size();
+        current_game = state.current_game;
+        if (current_game != null) {
+            int index = state.games.indexOf(current_game);
+            if (index >= 0) {
+                marks.put(current_game, new Mark(index, current_game.guesses.size(), current_game.history, current_game.history.size()));
+            } else {
+                current_game = null; // written again in full as soon as it is one of the games
+            }
+        }
+        highscore = state.highscore;
+        command_count = state.command_history.size();
+        first_command = state.command_history.isEmpty() ? null : state.command_history.getFirst();
+        stats = state.stats;
+        stats_changes = stats.changes;
     }
 
     /**
-     * Shows the terminal cursor if it is currently hidden.
+     * Replays the journal belonging to a loaded snapshot. A journal of another snapshot is ignored,
+     * and the replay stops at the first broken record.
+     *
+     * @param state the game state loaded from the snapshot, updated in place.
+     * @throws IOException if the journal can't be read.
      */
-    static void showCursor() {
-        System.out.print("\u001b[?25h");
+    static void replay(GameSerializer state) throws IOException {
+        File file = new File(FILE_PATH);
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                return;
+            }
+            int version = in.readInt();
+            if (version < 1 || version > VERSION || in.readLong() != state.journal_epoch) {
+                return;
+            }
+            while (true) {
+                int type = in.read();
+                if (type < 0) {
+                    return;
+                }
+                int length = in.readInt();
+                if (length < 0 || length > in.available()) {
+                    return; // cut off
+                }
+                byte[] content = new byte[length];
+                in.readFully(content);
+                CRC32 crc = new CRC32();
+                crc.update(content);
+                if (in.readInt() != (int) crc.getValue()) {
+                    return;
+                }
+                apply(state, type, version, new DataInputStream(new ByteArrayInputStream(content)));
+            }
+        } catch (EOFException e) {
+            // the last record was cut off
+        }
     }
 
     /**
-     * Moves the cursor in a specified direction by a given number of positions.
+     * Returns the version of the save format the games and progress of a journal were written in.
+     * Every journal version maps to a fixed one, so a newer save format doesn't change how old journals are read.
      *
-     * @param pos       the number of positions to move.
-     * @param direction the direction to move the cursor, represented by CursorMoveDirection.
+     * @param version the version of the journal.
+     * @return the version of the save format.
      */
-    static void moveCursor(int pos, CursorMoveDirection direction) {
-        System.out.print("\u001b[" + pos + direction.getLabel());
+    private static int gameVersion(int version) {
+        return switch (version) {
+            case 1 -> 2;
+            case 2, 3 -> 5;
+            case 4 -> 6;
+            default -> 7; // version 5
+        };
     }
 
     /**
-     * Saves the current cursor position in the terminal.
-     */
-    static void saveCursorPosition() {
-        System.out.print("\u001b[s");
+     * Applies a record to a game state.
+     *
+     * @param state   the game state.
+     * @param type    the type of the record.
+     * @param version the version of the journal.
+     * @param data    the content of the record.
+     * @throws IOException if the record is invalid.
+     */
+    private static void apply(GameSerializer state, int type, int version, DataInputStream data) throws IOException {
+        switch (type) {
+            case GAME -> {
+                int index = data.readInt();
+                Game game = GameSerializer.readGame(data, gameVersion(version));
+                if (index == state.games.size()) {
+                    state.games.add(game);
+                } else {
+                    if (state.current_game == state.games.get(index)) {
+                        state.current_game = game;
+                    }
+                    state.games.set(index, game);
+                }
+            }
+            case PROGRESS -> {
+                Game game = state.games.get(data.readInt());
+                GameSerializer.readProgress(data, game, gameVersion(version));
+                if (version == 1) {
+                    game.history.text(GameSerializer.readText(data));
+                } else {
+                    game.history.read(data);
+                }
+            }
+            case CURRENT -> state.current_game = state.games.get(data.readInt());
+            case HIGHSCORE -> state.highscore = data.readLong();
+            case STATS -> {
+                state.stats = new PlayerStats();
+                state.stats.read(data, version >= 3);
+                state.stats_read = true;
+                state.top_read = version >= 3;
+            }
+            case COMMANDS -> {
+                int added = data.readInt();
+                for (int i = 0; i < added; i++) {
+                    state.command_history.addFirst("");
+                }
+                int changed = data.readInt();
+                for (int i = 0; i < changed; i++) {
+                    state.command_history.set(i, GameSerializer.readText(data));
+                }
+            }
+            default -> throw new IOException("unknown journal record " + type);
+        }
     }
+}
+
+/**
+ * Writes the game state on a background thread, so that saving never holds up the game or the keyboard.
+ * A save only records the changes (see {@link GameJournal#record(GameSerializer)}) and marks the state as dirty.
+ * The writer then waits {@link #window} milliseconds so that the saves of a burst, like the moves of the AI
+ * or a command followed by the end of its turn, all go to disk in one write.
+ */
+class GameStateWriter {
+    static long window = 200; // Milliseconds a save waits for more saves to be written with it.
+    static final long FLUSH_TIMEOUT = 2000; // Milliseconds closing the game waits for the last write.
 
     /**
-     * Restores the cursor position to the last saved position in the terminal.
+     * Runs the writes on a single daemon thread.
      */
-    static void restoreCursorPosition() {
-        System.out.print("\u001b[u");
-    }
+    private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "GameStateWriter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final AtomicBoolean scheduled = new AtomicBoolean(); // Whether a write is already waiting for the window to end.
 
     /**
-     * Sets the cursor style in the terminal.
-     * May not work on all devices or terminal configurations.
-     *
-     * @param style the cursor style to apply, represented by CursorStyles.
+     * Makes sure that the changes recorded so far are written once the window ends.
      */
-    static void setCursorStyle(CursorStyles style) {
-        System.out.print("\u001b[" + style.getIndex() + " q");
+    static void markDirty() {
+        if (scheduled.compareAndSet(false, true)) {
+            executor.schedule(GameStateWriter::write, window, TimeUnit.MILLISECONDS);
+        }
     }
 
     /**
-     * Prints a string to the terminal with an animated effect.
-     * Each character is displayed with a delay, followed by a dot effect.
+     * Writes the changes recorded so far right away and waits for them to be on disk.
      *
-     * @param res the string to print with the animation.
+     * @param timeout the maximum number of milliseconds to wait.
+     * @return whether everything was written in time.
      */
-    static void fancyprint(String res) {
-        for (char c : res.toCharArray()) {
-            System.out.print(c + "●");
-            AVandiniEliaBzGuessGame.moveCursor(1, CursorMoveDirection.LEFT);
-            AVandiniEliaBzGuessGame.wait(20);
-            if (c == '.') {
-                AVandiniEliaBzGuessGame.wait(500);
-            }
+    static boolean flush(long timeout) {
+        try {
+            executor.submit(GameStateWriter::write).get(timeout, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            return false;
         }
-        System.out.println(" ");
-        System.out.print("\r");
-        AVandiniEliaBzGuessGame.showCursor();
     }
 
     /**
-     * Pauses the program execution for a specified duration in milliseconds.
-     *
-     * @param ms the duration of the pause in milliseconds.
+     * Writes the recorded changes, warning the player if it fails.
+     * Archived games go first, a crash in between leaves a game in both files rather than in none.
      */
-    public static void wait(int ms) {
+    private static void write() {
+        scheduled.set(false);
         try {
-            Thread.sleep(ms);
-        } catch (InterruptedException ex) {
-            Thread.currentThread().interrupt();
+            GameArchive.write();
+            GameJournal.write();
+        } catch (IOException e) {
+            AVandiniEliaBzGuessGame.setAttribute(FColors.YELLOW);
+            System.out.println("\rWARNING: unable to save gamestate (" + e.getMessage() + ")");
+            AVandiniEliaBzGuessGame.resetAttrributes();
         }
     }
+}
+
+/**
+ * Keeps finished games on disk instead of in the game state.
+ * The games are appended to {@link #FILE_PATH}, and {@link #INDEX_PATH} holds an entry of fixed size per game
+ * with what the game history lists: variant, code, start date, id, flags, score and attempts left.
+ * Only the index is read at startup, a game is read from the archive when its history is shown.
+ * Like the journal, archiving a game encodes it right away and {@link #write()} puts it on disk later.
+ */
+class GameArchive {
+    static final String FILE_PATH = "GameArchive.bin"; // The file the games are written to.
+    static final String INDEX_PATH = "GameArchive.index"; // The file the index is written to.
+
+    private static final int MAGIC = 0x425A4741; // "BZGA", starts the archive.
+    private static final int INDEX_MAGIC = 0x425A4749; // "BZGI", starts the index.
+    private static final int VERSION = 4; // The version of both formats, follows the magic number. Version 1 kept the history as text, version 2 had no game ids and version 3 stored the codes left to the evil code maker.
+    private static final int HEADER_BYTES = 8; // The size of the header of both files.
+    private static final int ENTRY_BYTES = 51; // The size of an entry of the index.
+    private static final int OLD_ENTRY_BYTES = 43; // The size of an entry of the index up to version 2.
+
+    /**
+     * What the index holds about a game.
+     */
+    static final class Entry {
+        final long offset; // Where the game starts in the archive, -1 if it isn't archived.
+        final int length; // The size of the game in the archive.
+        final Variant variant; // The variant of the game.
+        final int code; // The code of the game.
+        final long start; // When the game started, in milliseconds.
+        final long id; // The id of the game, 0 in an index up to version 2.
+        final int flags; // The flags of the game, see GameSerializer.flags(Game).
+        final long score; // The score of the game.
+        final long attempts_left; // The attempts left at the end of the game.
+        volatile Game game; // The game itself while it is in memory, null once it only is in the archive.
+
+        /**
+         * Constructs the entry of a game.
+         *
+         * @param game   the game.
+         * @param offset where the game starts in the archive, -1 if it isn't archived.
+         * @param length the size of the game in the archive.
+         */
+        Entry(Game game, long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+            variant = game.variant;
+            code = game.variant.encode(game.code);
+            start = game.start_date.getTime();
+            id = game.id;
+            flags = GameSerializer.flags(game);
+            score = game.score;
+            attempts_left = game.attempts_left;
+            this.game = game;
+        }
+
+        /**
+         * Reads an entry of the index.
+         *
+         * @param in      the stream to read from.
+         * @param version the version of the index.
+         * @throws IOException if an error occurs during reading or the entry is invalid.
+         */
+        Entry(DataInputStream in, int version) throws IOException {
+            offset = in.readLong();
+            length = in.readInt();
+            try {
+                variant = new Variant(in.readUnsignedByte(), in.readUnsignedByte());
+            } catch (IllegalArgumentException e) {
+                throw new IOException("invalid variant");
+            }
+            code = in.readInt();
+            if (offset < HEADER_BYTES || length < 0 || code < 0 || code >= variant.code_count) {
+                throw new IOException("invalid index entry");
+            }
+            start = in.readLong();
+            id = version >= 3 ? in.readLong() : 0;
+            flags = in.readUnsignedByte();
+            score = in.readLong();
+            attempts_left = in.readLong();
+        }
+
+        /**
+         * Writes the entry to the index.
+         *
+         * @param out the stream to write to.
+         * @throws IOException if an error occurs during writing.
+         */
+        void write(DataOutputStream out) throws IOException {
+            out.writeLong(offset);
+            out.writeInt(length);
+            out.writeByte(variant.colors);
+            out.writeByte(variant.pegs);
+            out.writeInt(code);
+            out.writeLong(start);
+            out.writeLong(id);
+            out.writeByte(flags);
+            out.writeLong(score);
+            out.writeLong(attempts_left);
+        }
+
+        /**
+         * Returns whether the game was won.
+         *
+         * @return true if the game was won.
+         */
+        boolean won() {
+            return (flags & GameSerializer.WON) != 0;
+        }
+
+        /**
+         * Returns whether the game was lost.
+         *
+         * @return true if the game was lost.
+         */
+        boolean lost() {
+            return (flags & GameSerializer.LOST) != 0;
+        }
+
+        /**
+         * Returns whether the game was played by the AI.
+         *
+         * @return true if the AI played the game.
+         */
+        boolean ai() {
+            return (flags & GameSerializer.AI) != 0;
+        }
+    }
+
+    static boolean available = false; // Whether the archive could be read, finished games stay in the game state otherwise.
+
+    private static final ArrayList<Entry> entries = new ArrayList<>(); // The archived games, oldest first.
+    private static final HashSet<Long> ids = new HashSet<>(); // The ids of the archived games, to notice a game archived twice.
+    private static long end = HEADER_BYTES; // The size of the archive, including the games not written yet.
+    private static final ArrayList<Entry> pending = new ArrayList<>(); // The entries of the games not written yet.
+    private static final ByteArrayOutputStream pending_games = new ByteArrayOutputStream(); // The games not written yet.
+
+    private static final Object io = new Object(); // Held while writing.
+    private static long written_end = HEADER_BYTES; // The size of the archive on disk.
+    private static int written_count = 0; // The number of entries of the index on disk.
 
     /**
-     * Handles key inputs during the game.
-     * Processes active keys from the input queue and triggers the corresponding actions.
+     * Reads the index. Entries of games that didn't make it into the archive are dropped.
+     * An archive of an older version is converted first.
      *
-     * @return true if a key was successfully processed; false otherwise.
-     */
-    static boolean KeyHandling() {
-        boolean processed_key = false;
-        for (byte[] pressed_key : new ArrayList<>(KeyListenenThread.active_keys)) {
-            for (byte[] key : KeyListenenThread.keymap.keySet()) {
-                if (Arrays.equals(pressed_key, key)) {
-                    KeyListenenThread.active_keys.remove(pressed_key);
-                    Consumer<byte[]> function = KeyListenenThread.keymap.get(key);
-                    function.accept(key);
-                    processed_key = true;
-                    break;
+     * @throws IOException if the files can't be read or are not an archive.
+     */
+    static synchronized void load() throws IOException {
+        File index = new File(INDEX_PATH);
+        File archive = new File(FILE_PATH);
+        entries.clear();
+        ids.clear();
+        if (index.exists()) {
+            int version;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(index)))) {
+                if (in.readInt() != INDEX_MAGIC) {
+                    throw new IOException("not an archive index");
                 }
+                version = in.readInt();
+                if (version < 1 || version > VERSION || version != archiveVersion(archive)) {
+                    throw new IOException("unsupported archive version " + version);
+                }
+                long count = (index.length() - HEADER_BYTES) / (version >= 3 ? ENTRY_BYTES : OLD_ENTRY_BYTES); // a cut off last entry is ignored
+                long archive_length = archive.length();
+                for (long i = 0; i < count; i++) {
+                    Entry entry = new Entry(in, version);
+                    if (entry.offset + entry.length > archive_length) {
+                        break; // the game itself was not written
+                    }
+                    entry.game = null;
+                    entries.add(entry);
+                }
+            }
+            if (version < VERSION) {
+                convert(version);
+            }
+            for (Entry entry : entries) {
+                ids.add(entry.id);
             }
         }
-        KeyListenenThread.active_keys.clear();
-        return processed_key;
+        end = entries.isEmpty() ? HEADER_BYTES : entries.getLast().offset + entries.getLast().length;
+        written_end = end;
+        written_count = entries.size();
+        available = true;
     }
 
     /**
-     * Shuffles the characters in a given array randomly.
+     * Reads the version from the header of the archive.
      *
-     * @param input the array of characters to shuffle.
+     * @param archive the archive.
+     * @return the version, 0 if the archive is missing.
+     * @throws IOException if the archive can't be read or is not an archive.
      */
-    static void shuffleCharArray(char[] input) {
-        Random random = new Random();
-        for (int i = input.length - 1; i > 0; i--) {
-            int index = random.nextInt(i + 1);
-            char x = input[index];
-            input[index] = input[i];
-            input[i] = x;
+    private static int archiveVersion(File archive) throws IOException {
+        if (!archive.exists()) {
+            return 0;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(archive))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("not an archive");
+            }
+            return in.readInt();
         }
     }
-}
 
-/**
- * Represents a key binding that links specific key sequences to an action.
- */
-class KeyBind {
-    String shortel; // The short description of the key binding.
-    String description; // The detailed description of the key binding.
-    byte[][] keys; // The byte sequences representing the keys for this binding.
+    /**
+     * Rewrites the loaded entries and their games in the current format, through temporary files.
+     *
+     * @param version the version the archive is in.
+     * @throws IOException if the archive can't be read or written.
+     */
+    private static void convert(int version) throws IOException {
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        DataOutputStream archive_out = new DataOutputStream(archive);
+        DataOutputStream index_out = new DataOutputStream(index);
+        archive_out.writeInt(MAGIC);
+        archive_out.writeInt(VERSION);
+        index_out.writeInt(INDEX_MAGIC);
+        index_out.writeInt(VERSION);
+        for (int i = 0; i < entries.size(); i++) {
+            Game game = read(entries.get(i), version);
+            int offset = archive.size();
+            GameSerializer.writeGame(archive_out, game);
+            Entry entry = new Entry(game, offset, archive.size() - offset);
+            entry.game = null;
+            entry.write(index_out);
+            entries.set(i, entry);
+        }
+        File archive_tmp = new File(FILE_PATH + ".tmp");
+        File index_tmp = new File(INDEX_PATH + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(archive_tmp)) {
+            archive.writeTo(file);
+        }
+        try (FileOutputStream file = new FileOutputStream(index_tmp)) {
+            index.writeTo(file);
+        }
+        GameSerializer.replaceFile(archive_tmp, new File(FILE_PATH));
+        GameSerializer.replaceFile(index_tmp, new File(INDEX_PATH));
+    }
 
     /**
-     * Executes the action associated with this key binding.
+     * Archives a finished game. It is written by the next {@link #write()}.
      *
-     * @param pressedKey the key that was pressed.
+     * @param game the game.
+     * @return false if the game was archived before.
+     * @throws IOException if the game can't be encoded.
      */
-    void exec(byte[] pressedKey) {
+    static synchronized boolean add(Game game) throws IOException {
+        if (!ids.add(game.id)) {
+            return false;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GameSerializer.writeGame(new DataOutputStream(bytes), game);
+        Entry entry = new Entry(game, end, bytes.size());
+        bytes.writeTo(pending_games);
+        end += bytes.size();
+        entries.add(entry);
+        pending.add(entry);
+        return true;
     }
-}
 
-/**
- * Key binding for closing the game.
- * Saves the game state and terminates the application.
- */
-class KeyBindClose extends KeyBind {
+    /**
+     * Writes the games archived since the last call, first the games and then their entries.
+     * Both go exactly where they belong, so after a failure the next call writes them again.
+     *
+     * @throws IOException if an error occurs during writing.
+     */
+    static void write() throws IOException {
+        synchronized (io) {
+            ArrayList<Entry> written;
+            byte[] games;
+            synchronized (GameArchive.class) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                written = new ArrayList<>(pending);
+                games = pending_games.toByteArray();
+            }
+            ByteArrayOutputStream index = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(index);
+            for (Entry entry : written) {
+                entry.write(out);
+            }
+            try (RandomAccessFile archive = new RandomAccessFile(FILE_PATH, "rw");
+                 RandomAccessFile index_file = new RandomAccessFile(INDEX_PATH, "rw")) {
+                if (written_count == 0) {
+                    archive.writeInt(MAGIC);
+                    archive.writeInt(VERSION);
+                    index_file.writeInt(INDEX_MAGIC);
+                    index_file.writeInt(VERSION);
+                }
+                archive.seek(written_end);
+                archive.write(games);
+                index_file.seek(HEADER_BYTES + (long) written_count * ENTRY_BYTES);
+                index_file.write(index.toByteArray());
+            }
+            synchronized (GameArchive.class) {
+                pending.subList(0, written.size()).clear();
+                byte[] rest = pending_games.toByteArray();
+                pending_games.reset();
+                pending_games.write(rest, games.length, rest.length - games.length);
+                written_end += games.length;
+                written_count += written.size();
+            }
+            for (Entry entry : written) {
+                entry.game = null; // read from the archive from now on
+            }
+        }
+    }
 
     /**
-     * Constructs a KeyBindClose with the predefined key sequence and description.
+     * Returns the entries of the archived games, oldest first.
+     *
+     * @return a copy of the entries.
      */
-    KeyBindClose() {
-        shortel = "^Q";
-        description = "Saves and close the game";
-        keys = new byte[][]{KeyCodes.Q.getCtrlCode()};
+    static synchronized ArrayList<Entry> entries() {
+        return new ArrayList<>(entries);
     }
 
     /**
-     * Executes the close action by invoking the CommandClose functionality.
+     * Returns the game of an entry, reading it from the archive if it isn't in memory.
      *
-     * @param pressedKey the key that was pressed.
-     */
-    @Override
-    void exec(byte[] pressedKey) {
-        new CommandClose().exec(new String[]{});
+     * @param entry the entry.
+     * @return the game.
+     * @throws IOException if the game can't be read.
+     */
+    static Game game(Entry entry) throws IOException {
+        Game game = entry.game;
+        if (game != null) {
+            return game;
+        }
+        return read(entry, VERSION);
+    }
+
+    /**
+     * Reads the game of an entry from the archive.
+     *
+     * @param entry   the entry.
+     * @param version the version the archive is in.
+     * @return the game.
+     * @throws IOException if the game can't be read.
+     */
+    private static Game read(Entry entry, int version) throws IOException {
+        byte[] bytes = new byte[entry.length];
+        try (RandomAccessFile archive = new RandomAccessFile(FILE_PATH, "r")) {
+            archive.seek(entry.offset);
+            archive.readFully(bytes);
+        }
+        // every version holds its games in a fixed version of the save format
+        int game_version = switch (version) {
+            case 1 -> 2;
+            case 2 -> 5;
+            case 3 -> 6;
+            default -> 7; // version 4
+        };
+        return GameSerializer.readGame(new DataInputStream(new ByteArrayInputStream(bytes)), game_version);
     }
 }
 
 /**
- * Key binding for starting a new game.
- * Allows the player to reset the game and begin anew.
+ * Reads game states written with Java serialization by versions up to v1.34.
+ * Those files refer to the classes of the time, so their descriptors are swapped for the Legacy classes
+ * which keep the old fields. Only the exact old versions are accepted, anything else is rejected.
  */
-class KeyBindNew extends KeyBind {
+class LegacyObjectInputStream extends ObjectInputStream {
 
     /**
-     * Constructs a KeyBindNew with the predefined key sequence and description.
+     * The stand-in of every old class, by its name and serialVersionUID.
      */
-    KeyBindNew() {
-        shortel = "^N";
-        description = "Starts a new game";
-        keys = new byte[][]{KeyCodes.N.getCtrlCode()};
+    private static final Map<String, Class<?>> LEGACY_CLASSES = Map.of(
+            "GameSerializer/1972423247620576190", LegacyGameSerializer.class,
+            "Game/-8965896789514464961", LegacyGame.class,
+            "Solver/7796118141592636992", LegacySolver.class,
+            "Point/-8429678096336364255", LegacyPoint.class,
+            "TextBox/933052422992729293", LegacyTextBox.class
+    );
+
+    /**
+     * Creates a stream reading an old game state.
+     *
+     * @param in the underlying stream.
+     * @throws IOException if the stream header can't be read.
+     */
+    LegacyObjectInputStream(InputStream in) throws IOException {
+        super(in);
     }
 
     /**
-     * Executes the action to start a new game by invoking the CommandNew functionality.
+     * Reads a class descriptor, replacing the ones of the old game classes by the descriptors of their Legacy classes.
      *
-     * @param pressedKey the key that was pressed.
+     * @return the descriptor to read the object with.
+     * @throws IOException            if an error occurs during reading or a game class has an unknown version.
+     * @throws ClassNotFoundException if a class can't be found.
      */
     @Override
-    void exec(byte[] pressedKey) {
-        new CommandNew().exec(new String[]{});
+    protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+        ObjectStreamClass desc = super.readClassDescriptor();
+        Class<?> legacy = LEGACY_CLASSES.get(desc.getName() + "/" + desc.getSerialVersionUID());
+        if (legacy != null) {
+            return ObjectStreamClass.lookup(legacy);
+        }
+        if (Set.of("GameSerializer", "Game", "Solver", "Point", "TextBox").contains(desc.getName())) {
+            throw new InvalidClassException(desc.getName(), "unknown version of the save file");
+        }
+        return desc;
     }
 }
 
 /**
- * Represents a game command, including its name, shortcuts, category, and functionality.
- * Commands are used to interact with the game or perform specific actions.
+ * The GameSerializer of versions up to v1.34, only used to read their files.
+ */
+class LegacyGameSerializer implements Serializable {
+    private static final long serialVersionUID = 1972423247620576190L;
+    long highscore;
+    ArrayList<LegacyGame> games;
+    LegacyGame current_game;
+    CursorStyles cursorStyles;
+    ArrayList<String> command_history;
+}
+
+/**
+ * The Game of versions up to v1.34, only used to read their files.
+ */
+class LegacyGame implements Serializable {
+    private static final long serialVersionUID = -8965896789514464961L;
+    char[] code;
+    long attempts_left;
+    String history;
+    boolean won;
+    boolean lost;
+    Date start_date;
+    long score;
+    LegacySolver solver;
+    ArrayList<LegacyPoint> matches;
+    ArrayList<char[]> guesses;
+    boolean ai;
+    char[] discovered_chars;
+    LegacyTextBox textBox;
+
+    /**
+     * Converts the old game into a classic game of the current version.
+     *
+     * @return the converted game, with a new solver and text box.
+     */
+    Game toGame() {
+        Variant variant = Variant.CLASSIC;
+        Game game = new Game();
+        game.variant = variant;
+        game.solver = new Solver(variant);
+        game.code = variant.decode(variant.encode(code));
+        game.attempts_left = attempts_left;
+        game.history = new GameHistory(variant);
+        if (history != null) {
+            game.history.text(history);
+        }
+        game.won = won;
+        game.lost = lost;
+        game.start_date = start_date == null ? new Date() : start_date;
+        game.score = score;
+        game.matches = new ArrayList<>();
+        for (LegacyPoint match : matches) {
+            game.matches.add(new Point(match.x, match.y));
+        }
+        game.guesses = new ArrayList<>();
+        for (char[] guess : guesses) {
+            game.guesses.add(variant.decode(variant.encode(guess)));
+        }
+        game.ai = ai;
+        game.discovered_chars = discovered_chars == null ? "_".repeat(variant.pegs).toCharArray() : discovered_chars;
+        for (int i = 0; i < game.discovered_chars.length; i++) {
+            if (game.discovered_chars[i] != '_') {
+                game.solver.revealPosition(i, game.discovered_chars[i]);
+            }
+        }
+        game.evil_codes = null;
+        game.id = GameSerializer.legacyId(game);
+        return game;
+    }
+}
+
+/**
+ * The Solver of versions up to v1.34, only used to read their files. Its state is thrown away.
+ */
+class LegacySolver implements Serializable {
+    private static final long serialVersionUID = 7796118141592636992L;
+    ArrayList<char[]> possibleCodes;
+}
+
+/**
+ * The Point of versions up to v1.34, only used to read their files.
+ */
+class LegacyPoint implements Serializable {
+    private static final long serialVersionUID = -8429678096336364255L;
+    public int x;
+    public int y;
+}
+
+/**
+ * The TextBox of versions up to v1.34, only used to read their files. Its state is thrown away.
+ */
+class LegacyTextBox implements Serializable {
+    private static final long serialVersionUID = 933052422992729293L;
+    StringBuilder text;
+    int cursor_pos;
+    LegacyPoint selection_pos;
+    boolean command_mode;
+    String result;
+}
+
+/**
+ * Main class for the BzGuessGame application.
+ * This class contains the game's entry point, configurations, and core methods.
+ */
+class AVandiniEliaBzGuessGame {
+    public static final String Author = "Eia Vandini"; // The author of the game.
+    public static final String Version = "v1.34"; // The current version of the game.
+
+    static Variant variant = Variant.CLASSIC; // Variant used for new games.
+    static boolean evil = false; // Whether new games are played against the evil code maker.
+    static CursorStyles cursorStyle = CursorStyles.BLINKING_BAR; // Default cursor style.
+    static long highscore = 0; // Current high score.
+    static PlayerStats stats = new PlayerStats(); // Statistics of the finished games.
+    static Command[] comands = new Command[]{
+            new CommandHelp(), new CommandKeybinds(), new CommandP(), new CommandSetCode(), new CommandRemains(),
+            new CommandBuy(), new CommandQuit(), new CommandNew(), new CommandHistory(),
+            new CommandRules(), new CommandClose(), new CommandBuyAI(), new CommandAI(),
+            new CommandUnlimitedAttempts(), new CommandChangeCursorStyle(), new CommandSolverThreads(),
+            new CommandVariant(), new CommandSolverCache(), new CommandSolverTimeLimit(),
+            new CommandEvil(), new CommandSaveWindow(), new CommandStats(), new CommandTop()
+    }; // Array of game commands.
+
+    static SolverStrategy[] strategies = new SolverStrategy[]{
+            new MinimaxStrategy(), new ExpectedSizeStrategy(), new EntropyStrategy(), new MostPartsStrategy(),
+            new OptimalStrategy()
+    }; // Strategies the AI can use, the first one is the default.
+
+    static KeyBind[] global_keybinds = new KeyBind[]{new KeyBindClose(), new KeyBindNew()}; // Global key bindings.
+    static ArrayList<Game> games = new ArrayList<Game>(); // List of games played.
+    static Game current_game; // The current game instance.
+    static GameSerializer gameSerailizer = new GameSerializer(highscore, games, current_game, cursorStyle, TextBox.command_history); // Serializer for game state.
+    static Thread kyThread = new KeyListenenThread(); // Thread for key listening.
+
+    /**
+     * The main method for the application.
+     * Initializes the game, loads saved state, and starts the key listening thread.
+     *
+     * @param args command-line arguments, {@code --simulate} runs {@link Simulation}, {@code --solve} runs {@link SolveService},
+     *             {@code --optimal} runs {@link OptimalSearch} and {@code --bench} runs {@link Benchmark} instead of the game.
+     */
+    public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--simulate")) {
+            Simulation.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--solve")) {
+            SolveService.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--optimal")) {
+            OptimalSearch.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--bench")) {
+            Benchmark.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        AVandiniEliaBzGuessGame.setCursorStyle(cursorStyle);
+        greeting();
+        kyThread.start();
+        loadOpeningBook();
+        loadSolverCache();
+        loadArchive();
+        loadGamestate();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> GameStateWriter.flush(GameStateWriter.FLUSH_TIMEOUT), "GameStateFlush"));
+        Runtime.getRuntime().addShutdownHook(new Thread(AVandiniEliaBzGuessGame::saveSolverCache, "SolverCacheSave"));
+        if (current_game.won || current_game.lost) {
+            newGame();
+        }
+        current_game.gameloop();
+        saveGameState();
+    }
+
+    /**
+     * Loads the game state from the saved file if it exists.
+     * If the game state cannot be loaded or is invalid, a new game is started.
+     */
+    static void loadGamestate() {
+        File f = new File(GameSerializer.FILE_PATH);
+        if (!f.exists()) {
+            f = new File(GameSerializer.LEGACY_FILE_PATH); // saved by an older version, converted on the next save
+        }
+        if (f.exists()) {
+            try {
+                gameSerailizer = GameSerializer.loadGameState(f.getPath());
+                GameJournal.replay(gameSerailizer);
+                highscore = gameSerailizer.highscore;
+                stats = gameSerailizer.stats;
+                games = gameSerailizer.games;
+                current_game = gameSerailizer.current_game;
+                TextBox.command_history = gameSerailizer.command_history;
+                archiveFinishedGames();
+                if (!gameSerailizer.stats_read) {
+                    seedStats();
+                } else if (!gameSerailizer.top_read) {
+                    seedLeaderboard();
+                }
+                if (current_game == null) {
+                    newGame();
+                }
+            } catch (Exception e) {
+                setAttribute(FColors.YELLOW);
+                System.out.println("WARNING: unable to read gamestate (" + Arrays.toString(e.getStackTrace()) + ")");
+                resetAttrributes();
+                newGame();
+            }
+        } else {
+            newGame();
+        }
+    }
+
+    /**
+     * Builds the statistics from the finished games, for a game state from before there were statistics.
+     * Runs once, the statistics are saved with the game state from then on.
+     */
+    static void seedStats() {
+        stats = new PlayerStats();
+        try {
+            for (GameArchive.Entry entry : GameArchive.entries()) {
+                stats.record(GameArchive.game(entry));
+            }
+        } catch (IOException e) {
+            setAttribute(FColors.YELLOW);
+            System.out.println("WARNING: unable to count archived games in the statistics (" + e.getMessage() + ")");
+            resetAttrributes();
+        }
+        for (Game game : games) {
+            if (game.won || game.lost) {
+                stats.record(game);
+            }
+        }
+    }
+
+    /**
+     * Fills the list of the highest scores from the won games, for a game state from before there was a leaderboard.
+     * The archive's index has the scores, only the games that make it into the list are read for their number of guesses.
+     * The list of the fewest guesses would need every game to be read, it starts empty instead.
+     */
+    static void seedLeaderboard() {
+        Leaderboard top = stats.top;
+        try {
+            for (GameArchive.Entry entry : GameArchive.entries()) {
+                if (entry.won() && !entry.ai() && top.makesScores(entry.score, entry.start)) {
+                    Game game = GameArchive.game(entry);
+                    top.addScore(new Leaderboard.Entry(entry.score, game.guesses.size(), entry.start, entry.variant));
+                }
+            }
+        } catch (IOException e) {
+            setAttribute(FColors.YELLOW);
+            System.out.println("WARNING: unable to add archived games to the leaderboard (" + e.getMessage() + ")");
+            resetAttrributes();
+        }
+        for (Game game : games) {
+            if (game.won && !game.ai) {
+                top.addScore(new Leaderboard.Entry(game.score, game.guesses.size(), game.start_date.getTime(), game.variant));
+            }
+        }
+    }
+
+    /**
+     * Loads the index of the archive of finished games.
+     * If it can't be read, finished games stay in the game state and a warning message is displayed.
+     */
+    static void loadArchive() {
+        try {
+            GameArchive.load();
+        } catch (IOException e) {
+            setAttribute(FColors.YELLOW);
+            System.out.println("WARNING: unable to read game archive (" + e.getMessage() + ")");
+            resetAttrributes();
+        }
+    }
+
+    /**
+     * Moves the finished games, except the current one, from the list of games to the archive.
+     */
+    static void archiveFinishedGames() {
+        if (!GameArchive.available) {
+            return;
+        }
+        try {
+            for (Iterator<Game> it = games.iterator(); it.hasNext(); ) {
+                Game game = it.next();
+                if (game != current_game && (game.won || game.lost)) {
+                    GameArchive.add(game); // false if this very game made it into the archive before the game state was saved
+                    it.remove();
+                }
+            }
+        } catch (IOException e) {
+            setAttribute(FColors.YELLOW);
+            System.out.println("WARNING: unable to archive games (" + e.getMessage() + ")");
+            resetAttrributes();
+        }
+    }
+
+    /**
+     * Loads the solver's opening book from its file if it exists.
+     * A broken book is not a problem, it is rebuilt while playing.
+     */
+    static void loadOpeningBook() {
+        if (!new File(OpeningBook.FILE_PATH).exists()) {
+            return;
+        }
+        try {
+            OpeningBook.load(OpeningBook.FILE_PATH);
+        } catch (IOException e) {
+            setAttribute(FColors.YELLOW);
+            System.out.println("WARNING: unable to read opening book (" + e.getMessage() + ")");
+            resetAttrributes();
+        }
+    }
+
+    /**
+     * Loads the solver's cache from its file if it exists.
+     * A broken cache is not a problem, it fills up again while playing.
+     */
+    static void loadSolverCache() {
+        if (!new File(SolverCache.FILE_PATH).exists()) {
+            return;
+        }
+        try {
+            SolverCache.load(SolverCache.FILE_PATH);
+        } catch (IOException e) {
+            setAttribute(FColors.YELLOW);
+            System.out.println("WARNING: unable to read solver cache (" + e.getMessage() + ")");
+            resetAttrributes();
+        }
+    }
+
+    /**
+     * Writes the solver's cache to its file, so the next start of the game doesn't have to search those positions again.
+     */
+    static void saveSolverCache() {
+        try {
+            SolverCache.save(SolverCache.FILE_PATH);
+        } catch (IOException e) {
+            setAttribute(FColors.YELLOW);
+            System.out.println("\rWARNING: unable to save solver cache (" + e.getMessage() + ")");
+            resetAttrributes();
+        }
+    }
+
+    /**
+     * Saves the current game state to a file.
+     * The changes are recorded right away and written in the background by {@link GameStateWriter}.
+     * If saving fails, a warning message is displayed.
+     */
+    static void saveGameState() {
+        gameSerailizer.highscore = highscore;
+        gameSerailizer.stats = stats;
+        gameSerailizer.games = games;
+        gameSerailizer.current_game = current_game;
+        gameSerailizer.command_history = TextBox.command_history;
+        try {
+            GameJournal.record(gameSerailizer);
+            GameStateWriter.markDirty();
+        } catch (IOException e) {
+            setAttribute(FColors.YELLOW);
+            System.out.println("WARNING: unable to save gamestate (" + e.getMessage() + ")");
+            resetAttrributes();
+        }
+    }
+
+    /**
+     * Displays a greeting message to the player at the start of the game.
+     * Also provides help by executing the help command.
+     */
+    static void greeting() {
+        System.out.println("\rProgrammed by Vandini Elia");
+        new CommandHelp().exec(new String[]{""});
+        AVandiniEliaBzGuessGame.eraseLinesUp(2);
+    }
+
+    /**
+     * Displays a win screen message when the player successfully guesses the secret code.
+     * Also prompts the player to decide whether to play again.
+     */
+    static void winScreen() {
+        System.out.println("\rCongratulations, Score is " + AVandiniEliaBzGuessGame.current_game.score + ", (Highscore: " + highscore + ")");
+        if (stats.scores > 1) {
+            System.out.printf("\rYour score beat %.0f%% of your other wins%n", stats.beaten(AVandiniEliaBzGuessGame.current_game.score));
+        }
+        askIfPlayAgain();
+    }
+
+    /**
+     * Displays a hypothetical win screen message when the AI successfully completes the game.
+     * Also prompts the player to decide whether to play again.
+     */
+    static void aiWinScreen() {
+        System.out.println("\rHypothetical score is " + AVandiniEliaBzGuessGame.current_game.score + ", (Highscore: " + highscore + ")");
+        askIfPlayAgain();
+    }
+
+    /**
+     * Displays a loss screen message when the player fails to guess the secret code.
+     * Also reveals the correct code and prompts the player to decide whether to play again.
+     */
+    static void loosescreen() {
+        System.out.println("\rYou lost! Secret code was " + Arrays.toString(AVandiniEliaBzGuessGame.current_game.code) + ".");
+        askIfPlayAgain();
+    }
+
+    /**
+     * Displays a loss screen message when the AI fails to complete the game.
+     * Also reveals the correct code and prompts the player to decide whether to play again.
+     */
+    static void aiLooseScreen() {
+        System.out.println("\rNot even the AI could save you☠\uFE0F. Secret code was " + Arrays.toString(AVandiniEliaBzGuessGame.current_game.code) + ".");
+        askIfPlayAgain();
+    }
+
+    /**
+     * Prompts the player to decide whether to play another game.
+     * Handles key inputs for "Yes" or "No" options and executes the appropriate action.
+     */
+    static void askIfPlayAgain() {
+        AtomicBoolean loop = new AtomicBoolean(true);
+        AtomicBoolean cancel = new AtomicBoolean(false);
+        AtomicInteger seleciton = new AtomicInteger();
+
+        KeyListenenThread.keymap.clear();
+        KeyListenenThread.keymap.put(KeyCodes.ENTER.getCode(), n -> loop.set(false));
+        KeyListenenThread.keymap.put(KeyCodes.RIGHT_ARROW.getCode(), n -> seleciton.getAndIncrement());
+        KeyListenenThread.keymap.put(KeyCodes.LEFT_ARROW.getCode(), n -> seleciton.getAndDecrement());
+
+        AVandiniEliaBzGuessGame.hideCursor();
+        System.out.println("\rWant to play again?");
+        System.out.println("\r");
+
+        while (loop.get()) {
+
+            System.out.print("    ");
+            if (seleciton.get() == 0) {
+                AVandiniEliaBzGuessGame.setAttribute(TextAttributes.INVERSE);
+            }
+            AVandiniEliaBzGuessGame.setAttribute(TextAttributes.BRIGHT);
+            System.out.print('Y');
+            AVandiniEliaBzGuessGame.setAttribute(ResetTextAttributes.RESET_BRIGHT);
+            System.out.print("es");
+            AVandiniEliaBzGuessGame.resetAttrributes();
+            System.out.print("/");
+            if (seleciton.get() == 1) {
+                AVandiniEliaBzGuessGame.setAttribute(TextAttributes.INVERSE);
+            }
+            AVandiniEliaBzGuessGame.setAttribute(TextAttributes.BRIGHT);
+            System.out.print('N');
+            AVandiniEliaBzGuessGame.setAttribute(ResetTextAttributes.RESET_BRIGHT);
+            System.out.print("o");
+            AVandiniEliaBzGuessGame.resetAttrributes();
+
+
+            while (!AVandiniEliaBzGuessGame.KeyHandling()) {
+                AVandiniEliaBzGuessGame.wait(10);
+            }
+            if (seleciton.get() < 0) {
+                seleciton.set(1);
+            }
+            if (seleciton.get() > 1) {
+                seleciton.set(0);
+            }
+            System.out.println();
+            AVandiniEliaBzGuessGame.eraseLinesUp(1);
+        }
+        AVandiniEliaBzGuessGame.showCursor();
+        AVandiniEliaBzGuessGame.eraseLinesUp(2);
+        if (seleciton.get() == 0) {
+            newGame();
+        } else {
+            System.out.println("\n\rSee you soon!\r");
+            new CommandClose().exec(new String[]{});
+
+        }
+    }
+
+    /**
+     * Starts a new game by creating a new instance of the Game class.
+     * Adds the new game to the list of games and sets it as the current game, the finished games go to the archive.
+     *
+     * @return the new Game instance.
+     */
+    static Game newGame() {
+        Game g = new Game();
+        games.add(g);
+        current_game = g;
+        archiveFinishedGames();
+        g.startGame();
+        return g;
+    }
+
+    /**
+     * Erases the current line in the terminal.
+     * Clears the line and resets the cursor to the beginning of the line.
+     */
+    static void eraseLine() {
+        System.out.print("\u001b[2K\r");
+    }
+
+    /**
+     * Erases a specified number of lines above the current cursor position.
+     * Moves the cursor up and clears lines in the terminal.
+     *
+     * @param lines the number of lines to erase.
+     */
+    static void eraseLinesUp(int lines) {
+        if (lines == 0) {
+            return;
+        }
+        moveCursor(lines, CursorMoveDirection.UPX);
+        System.out.print("\u001b[0J");
+    }
+
+    /**
+     * Erases all lines from the current cursor position to the end of the screen.
+     */
+    static void eraseLinesToEndOfScreen() {
+        System.out.print("\u001b[0J");
+    }
+
+    /**
+     * Sets a specific terminal text attribute.
+     *
+     * @param attr the attribute to set, represented as an AbstarctAttributes instance.
+     */
+    static void setAttribute(AbstarctAttributes attr) {
+        System.out.printf("\u001b[%dm", attr.getIndex());
+    }
+
+    /**
+     * Sets multiple terminal text attributes at once.
+     *
+     * @param attr an array of attributes to set.
+     */
+    static void setAttribute(AbstarctAttributes[] attr) {
+        for (AbstarctAttributes a : attr) {
+            setAttribute(a);
+        }
+    }
+
+    /**
+     * Sets a 8 bit color in foreground.
+     *
+     * @param color the color to set.
+     */
+    static void set8bitForeground(int color) {
+        System.out.printf("\u001b[38;5;%dm", color);
+    }
+
+    /**
+     * Sets a 8 bit color in background.
+     *
+     * @param color the color to set.
+     */
+    static void set8bitBackground(int color) {
+        System.out.printf("\u001b[48;5;%dm", color);
+    }
+
+
+    /**
+     * Resets all text attributes in the terminal to default.
+     */
+    static void resetAttrributes() {
+        setAttribute(TextAttributes.RESET);
+    }
+
+    /**
+     * Clears the entire terminal screen and moves the cursor to the top-left corner.
+     */
+    static void clearScreen() {
+        System.out.print("\u001b[H\u001b[2J");
+    }
+
+    /**
+     * Hides the terminal cursor to enhance display aesthetics.
+     */
+    static void hideCursor() {
+        System.out.print("\u001b[?25l");
+    }
+
+    /**
+     * Shows the terminal cursor if it is currently hidden.
+     */
+    static void showCursor() {
+        System.out.print("\u001b[?25h");
+    }
+
+    /**
+     * Moves the cursor in a specified direction by a given number of positions.
+     *
+     * @param pos       the number of positions to move.
+     * @param direction the direction to move the cursor, represented by CursorMoveDirection.
+     */
+    static void moveCursor(int pos, CursorMoveDirection direction) {
+        System.out.print("\u001b[" + pos + direction.getLabel());
+    }
+
+    /**
+     * Saves the current cursor position in the terminal.
+     */
+    static void saveCursorPosition() {
+        System.out.print("\u001b[s");
+    }
+
+    /**
+     * Restores the cursor position to the last saved position in the terminal.
+     */
+    static void restoreCursorPosition() {
+        System.out.print("\u001b[u");
+    }
+
+    /**
+     * Sets the cursor style in the terminal.
+     * May not work on all devices or terminal configurations.
+     *
+     * @param style the cursor style to apply, represented by CursorStyles.
+     */
+    static void setCursorStyle(CursorStyles style) {
+        System.out.print("\u001b[" + style.getIndex() + " q");
+    }
+
+    /**
+     * Prints a string to the terminal with an animated effect.
+     * Each character is displayed with a delay, followed by a dot effect.
+     *
+     * @param res the string to print with the animation.
+     */
+    static void fancyprint(String res) {
+        for (char c : res.toCharArray()) {
+            System.out.print(c + "●");
+            AVandiniEliaBzGuessGame.moveCursor(1, CursorMoveDirection.LEFT);
+            AVandiniEliaBzGuessGame.wait(20);
+            if (c == '.') {
+                AVandiniEliaBzGuessGame.wait(500);
+            }
+        }
+        System.out.println(" ");
+        System.out.print("\r");
+        AVandiniEliaBzGuessGame.showCursor();
+    }
+
+    /**
+     * Pauses the program execution for a specified duration in milliseconds.
+     *
+     * @param ms the duration of the pause in milliseconds.
+     */
+    public static void wait(int ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Handles key inputs during the game.
+     * Processes active keys from the input queue and triggers the corresponding actions.
+     *
+     * @return true if a key was successfully processed; false otherwise.
+     */
+    static boolean KeyHandling() {
+        boolean processed_key = false;
+        for (byte[] pressed_key : new ArrayList<>(KeyListenenThread.active_keys)) {
+            for (byte[] key : KeyListenenThread.keymap.keySet()) {
+                if (Arrays.equals(pressed_key, key)) {
+                    KeyListenenThread.active_keys.remove(pressed_key);
+                    Consumer<byte[]> function = KeyListenenThread.keymap.get(key);
+                    function.accept(key);
+                    processed_key = true;
+                    break;
+                }
+            }
+        }
+        KeyListenenThread.active_keys.clear();
+        return processed_key;
+    }
+
+    /**
+     * Looks up a solver strategy by name.
+     *
+     * @param args the arguments of a command, the first one being the name of the strategy if present.
+     * @return the named strategy or the default one if no name was given.
+     * @throws InvalidInputException if no strategy has the given name.
+     */
+    static SolverStrategy getStrategy(String[] args) throws InvalidInputException {
+        if (args.length == 0 || args[0].isEmpty()) {
+            return strategies[0];
+        }
+        StringBuilder names = new StringBuilder();
+        for (SolverStrategy strategy : strategies) {
+            if (strategy.getName().equalsIgnoreCase(args[0])) {
+                return strategy;
+            }
+            names.append(names.isEmpty() ? "" : ", ").append(strategy.getName());
+        }
+        throw new InvalidInputException("Unknown strategy, choose from " + names);
+    }
+
+    /**
+     * Shuffles the characters in a given array randomly.
+     *
+     * @param input the array of characters to shuffle.
+     */
+    static void shuffleCharArray(char[] input) {
+        Random random = new Random();
+        for (int i = input.length - 1; i > 0; i--) {
+            int index = random.nextInt(i + 1);
+            char x = input[index];
+            input[index] = input[i];
+            input[i] = x;
+        }
+    }
+}
+
+/**
+ * Represents a key binding that links specific key sequences to an action.
+ */
+class KeyBind {
+    String shortel; // The short description of the key binding.
+    String description; // The detailed description of the key binding.
+    byte[][] keys; // The byte sequences representing the keys for this binding.
+
+    /**
+     * Executes the action associated with this key binding.
+     *
+     * @param pressedKey the key that was pressed.
+     */
+    void exec(byte[] pressedKey) {
+    }
+}
+
+/**
+ * Key binding for closing the game.
+ * Saves the game state and terminates the application.
+ */
+class KeyBindClose extends KeyBind {
+
+    /**
+     * Constructs a KeyBindClose with the predefined key sequence and description.
+     */
+    KeyBindClose() {
+        shortel = "^Q";
+        description = "Saves and close the game";
+        keys = new byte[][]{KeyCodes.Q.getCtrlCode()};
+    }
+
+    /**
+     * Executes the close action by invoking the CommandClose functionality.
+     *
+     * @param pressedKey the key that was pressed.
+     */
+    @Override
+    void exec(byte[] pressedKey) {
+        new CommandClose().exec(new String[]{});
+    }
+}
+
+/**
+ * Key binding for starting a new game.
+ * Allows the player to reset the game and begin anew.
+ */
+class KeyBindNew extends KeyBind {
+
+    /**
+     * Constructs a KeyBindNew with the predefined key sequence and description.
+     */
+    KeyBindNew() {
+        shortel = "^N";
+        description = "Starts a new game";
+        keys = new byte[][]{KeyCodes.N.getCtrlCode()};
+    }
+
+    /**
+     * Executes the action to start a new game by invoking the CommandNew functionality.
+     *
+     * @param pressedKey the key that was pressed.
+     */
+    @Override
+    void exec(byte[] pressedKey) {
+        new CommandNew().exec(new String[]{});
+    }
+}
+
+/**
+ * Represents a game command, including its name, shortcuts, category, and functionality.
+ * Commands are used to interact with the game or perform specific actions.
  */
 class Command {
     String fullName; // The full name of the command.
@@ -940,1242 +2482,5231 @@ class Command {
     String description; // A detailed description of the command.
 
     /**
-     * Executes the action defined by the command.
+     * Executes the action defined by the command.
+     *
+     * @param args the arguments passed with the command.
+     * @throws InvalidInputException if the input is invalid for the command.
+     */
+    void exec(String[] args) throws InvalidInputException {
+    }
+}
+
+/**
+ * Command to display help information for all available commands.
+ * Lists commands grouped by their categories and provides descriptions.
+ */
+class CommandHelp extends Command {
+
+    /**
+     * Constructs a CommandHelp with predefined attributes.
+     */
+    CommandHelp() {
+        super();
+        category = CommandCategory.BASIC;
+        longc = "help";
+        shortc = "h";
+        description = "Display a help screen explaining the game commands";
+        fullName = "Help";
+    }
+
+    /**
+     * Executes the help command by displaying available commands and their descriptions.
+     *
+     * @param args the arguments passed with the command (e.g., to show secret commands).
+     */
+    void exec(String[] args) {
+        boolean show_secret = false;
+        if (args.length > 0 && args[0].equals("-s")) {
+            show_secret = true;
+        }
+        String space_storage = "                  ";
+
+        for (CommandCategory c : CommandCategory.values()) {
+            if (c == CommandCategory.SECRET && !show_secret) {
+                continue;
+            }
+            AVandiniEliaBzGuessGame.setAttribute(TextAttributes.BRIGHT);
+            System.out.println("\n\r" + c.toString().toUpperCase());
+            AVandiniEliaBzGuessGame.resetAttrributes();
+            for (Command command : AVandiniEliaBzGuessGame.comands) {
+                if (c != command.category) {
+                    continue;
+                }
+                String help_string = "\r." + command.shortc + " | ." + command.longc;
+                help_string = help_string + space_storage.substring(help_string.length()) + command.description;
+                System.out.println(help_string);
+            }
+        }
+        System.out.println();
+        System.out.println("\rSoftware by " + AVandiniEliaBzGuessGame.Author + ". Version " + AVandiniEliaBzGuessGame.Version);
+    }
+}
+
+/**
+ * Command to display help information for all available Keybinds.
+ * Lists Keybinds and provides descriptions.
+ */
+class CommandKeybinds extends Command {
+
+    /**
+     * Constructs a CommandKeybinds with predefined attributes.
+     */
+    CommandKeybinds() {
+        super();
+        category = CommandCategory.BASIC;
+        longc = "keys";
+        shortc = "k";
+        description = "Display a help screen explaining the game keybinds";
+        fullName = "Keybinds";
+    }
+
+    /**
+     * Executes the help command by displaying available keybinds and their descriptions.
+     *
+     * @param args the arguments passed with the command (not used for this command).
+     */
+    void exec(String[] args) {
+        String space_storage = "         ";
+        AVandiniEliaBzGuessGame.set8bitForeground(241);
+        System.out.println();
+        System.out.println("\r ^X stands for the ctrl modifyer (eg. ^C is ctrl+C)");
+        AVandiniEliaBzGuessGame.resetAttrributes();
+        System.out.println();
+        for (KeyBind keyBind : AVandiniEliaBzGuessGame.global_keybinds) {
+            String help_string = "\r    " + keyBind.shortel;
+            help_string = help_string + space_storage.substring(help_string.length()) + keyBind.description;
+            System.out.println(help_string);
+        }
+        System.out.println();
+        AVandiniEliaBzGuessGame.set8bitForeground(241);
+        System.out.println("\rYou can also use the arrow combined with alt and/or shift to move around the input bar."
+                + "\n\rThe up and down arrow keys will let you cycle your input history");
+        AVandiniEliaBzGuessGame.resetAttrributes();
+    }
+}
+
+/**
+ * Command to display the rules of the game.
+ * Provides detailed instructions and guidelines for playing the game.
+ */
+class CommandRules extends Command {
+
+    /**
+     * Constructs a CommandRules with predefined attributes.
+     */
+    CommandRules() {
+        super();
+        category = CommandCategory.BASIC;
+        longc = "rules";
+        shortc = "r";
+        description = "Display a help screen explaining the game rules";
+        fullName = "Rules";
+    }
+
+    /**
+     * Executes the rules command by displaying the game rules and gameplay instructions.
+     *
+     * @param args the arguments passed with the command (not used for this command).
+     */
+    void exec(String[] args) {
+        Variant variant = AVandiniEliaBzGuessGame.current_game == null ? AVandiniEliaBzGuessGame.variant : AVandiniEliaBzGuessGame.current_game.variant;
+        String[] numbers = {"zero", "one", "two", "three", "four", "five", "six", "seven", "eight"};
+        String letters = new String(variant.options).toLowerCase();
+        letters = variant.colors <= 6 ? String.join(", ", letters.split("")) : letters.charAt(0) + ", ..., " + letters.charAt(letters.length() - 1);
+        System.out.println("\r╔═══════════════════════════════════════════════════════════════════════════╗");
+        System.out.println("\r║                             BzGuessGame Help                              ║");
+        System.out.println("\r║                                                                           ║");
+        System.out.println("\r║ Welcome to my BzGuessGame! Your goal is to guess the secret code.         ║");
+        System.out.println("\r║                                                                           ║");
+        System.out.printf("\r║ %-74s║%n", "- The secret code consists of " + variant.pegs + " characters from {" + letters + "}.");
+        System.out.printf("\r║ %-74s║%n", "- Characters can appear zero to " + numbers[variant.pegs] + " times.");
+        System.out.println("\r║ - You have 20 attempts to guess the code.                                 ║");
+        System.out.println("\r║ - After each guess, you'll receive feedback:                              ║");
+        System.out.println("\r║   X: Correct character at the correct position.                           ║");
+        System.out.println("\r║   -: Correct character but at the wrong position.                         ║");
+        System.out.println("\r║                                                                           ║");
+        System.out.println("\r║ Check out available commands with .help or .h!                            ║");
+        System.out.println("\r║ To execute a command, prefix a '.' before the command.                    ║");
+        System.out.println("\r║ 'HELP' will be interpreted as a guess while '.help' or '.h' is a command. ║");
+        System.out.println("\r║                                                                           ║ ");
+        System.out.println("\r║ Good luck!                                                                ║");
+        System.out.println("\r╚═══════════════════════════════════════════════════════════════════════════╝ ");
+    }
+}
+
+/**
+ * Command to reveal the secret code.
+ * This is categorized as a secret command and is primarily for debugging or cheating.
+ */
+class CommandP extends Command {
+
+    /**
+     * Constructs a CommandP with predefined attributes.
+     */
+    CommandP() {
+        super();
+        category = CommandCategory.SECRET;
+        longc = "p";
+        shortc = "p";
+        description = "Reveals the code";
+        fullName = "Reveal Code";
+    }
+
+    /**
+     * Executes the command to print the secret code to the terminal.
+     *
+     * @param args the arguments passed with the command (not used for this command).
+     */
+    void exec(String[] args) {
+        System.out.println("\rCode is " + Arrays.toString(AVandiniEliaBzGuessGame.current_game.code));
+    }
+}
+
+/**
+ * Command to quit the game.
+ * Marks the current game as lost and ends the session.
+ */
+class CommandQuit extends Command {
+
+    /**
+     * Constructs a CommandQuit with predefined attributes.
+     */
+    CommandQuit() {
+        super();
+        category = CommandCategory.BASIC;
+        longc = "quit";
+        shortc = "q";
+        description = "Reveals the code and quits the game";
+        fullName = "Quit";
+    }
+
+    /**
+     * Executes the quit command by marking the current game as lost.
+     *
+     * @param args the arguments passed with the command (not used for this command).
+     */
+    void exec(String[] args) {
+        AVandiniEliaBzGuessGame.current_game.lost = true;
+    }
+}
+
+/**
+ * Command to close the game.
+ * Saves the game state and terminates the application cleanly.
+ */
+class CommandClose extends Command {
+
+    /**
+     * Constructs a CommandClose with predefined attributes.
+     */
+    CommandClose() {
+        super();
+        category = CommandCategory.BASIC;
+        longc = "close";
+        shortc = "c";
+        description = "Saves game and quits";
+        fullName = "Close Game";
+    }
+
+    /**
+     * Executes the close command by saving the game state and exiting the application.
+     *
+     * @param args the arguments passed with the command (not used for this command).
+     */
+    void exec(String[] args) {
+        KeyListenenThread.running = false;
+        try {
+            KeyListenenThread.disableRawMode();
+        } catch (Exception ignored) {
+        }
+        AVandiniEliaBzGuessGame.saveGameState();
+        if (!GameStateWriter.flush(GameStateWriter.FLUSH_TIMEOUT)) {
+            AVandiniEliaBzGuessGame.setAttribute(FColors.YELLOW);
+            System.out.println("\rWARNING: the gamestate could not be written in time");
+            AVandiniEliaBzGuessGame.resetAttrributes();
+        }
+        System.out.println("\r");
+        AVandiniEliaBzGuessGame.setCursorStyle(CursorStyles.BLINKING_BLOCK);
+        System.exit(0); // not ideal but cleaner than manually exiting the game loop from here
+    }
+}
+
+/**
+ * Command to start a new game.
+ * Resets the current game and begins a new one.
+ */
+class CommandNew extends Command {
+
+    /**
+     * Constructs a CommandNew with predefined attributes.
+     */
+    CommandNew() {
+        super();
+        category = CommandCategory.INGAME;
+        longc = "new";
+        shortc = "n";
+        description = "Start over a new game";
+        fullName = "New Game";
+    }
+
+    /**
+     * Executes the new game command by marking the current game as lost and starting a new game.
+     *
+     * @param args the arguments passed with the command (not used for this command).
+     */
+    void exec(String[] args) {
+        Game g = AVandiniEliaBzGuessGame.current_game;
+        g.lost = true;
+        AVandiniEliaBzGuessGame.stats.record(g); // given up
+        AVandiniEliaBzGuessGame.newGame();
+    }
+}
+
+/**
+ * Command to set a custom secret code.
+ * Allows users to define their own code for the game.
+ */
+class CommandSetCode extends Command {
+
+    /**
+     * Constructs a CommandSetCode with predefined attributes.
+     */
+    CommandSetCode() {
+        super();
+        category = CommandCategory.SECRET;
+        longc = "setcode";
+        shortc = "S";
+        description = "Set the secret code to a user input";
+        fullName = "Set Code";
+    }
+
+    /**
+     * Executes the set code command, allowing the user to define a new secret code.
+     * Validates the input for length and allowed characters, and that it agrees with the feedback given so far.
+     *
+     * @param args the arguments passed with the command, containing the new code.
+     * @throws InvalidInputException if the input is invalid.
+     */
+    void exec(String[] args) throws InvalidInputException {
+        if (args.length > 1) {
+            throw new InvalidInputException("Only one argument expected");
+        }
+        if (args.length < 1) {
+            throw new InvalidInputException("At least one argument expected");
+        }
+        Variant variant = AVandiniEliaBzGuessGame.current_game.variant;
+        if (args[0].length() != variant.pegs) {
+            throw new InvalidInputException("New code may only contain " + variant.pegs + " characters");
+        }
+        if (!variant.isValidCode(args[0])) {
+            throw new InvalidInputException("New code must consist of " + variant.describeOptions());
+        }
+        Game game = AVandiniEliaBzGuessGame.current_game;
+        int code = variant.encode(args[0].toCharArray());
+        for (int i = 0; i < game.guesses.size(); i++) {
+            if (variant.feedback(code, variant.encode(game.guesses.get(i))) != variant.pack(game.matches.get(i))) {
+                throw new InvalidInputException("New code must agree with the feedback of every guess so far");
+            }
+        }
+        for (int i = 0; i < variant.pegs; i++) {
+            if (game.discovered_chars[i] != '_' && game.discovered_chars[i] != variant.decode(code)[i]) {
+                throw new InvalidInputException("New code must agree with the revealed letters");
+            }
+        }
+        game.code = variant.decode(code);
+        game.evil_codes = null; // the code is fixed now
+        System.out.println("\rThe secret code has been updated");
+    }
+}
+
+/**
+ * Command to buy a letter of the secret code.
+ * Reveals one letter of the code in its correct position for a cost of 5 attempts.
+ */
+class CommandBuy extends Command {
+
+    /**
+     * Constructs a CommandBuy with predefined attributes.
+     */
+    CommandBuy() {
+        super();
+        category = CommandCategory.STORE;
+        longc = "buy";
+        shortc = "b";
+        description = "Buy one letter of the secret code at its right position. Costs 5 attempts";
+        fullName = "Buy";
+    }
+
+    /**
+     * Executes the buy command, revealing a single character in the correct position.
+     * Reduces the number of attempts by 5.
+     *
+     * @param args the arguments passed with the command (not used for this command).
+     */
+    void exec(String[] args) {
+        Random r = new Random();
+        Game g = AVandiniEliaBzGuessGame.current_game;
+        char[] res_string = "_".repeat(g.variant.pegs).toCharArray();
+        int pos = r.nextInt(g.variant.pegs); // Randomly selects a position to reveal.
+        g.evilReveal(pos);
+        res_string[pos] = AVandiniEliaBzGuessGame.current_game.code[pos];
+
+        // Removes possible codes that don't match the revealed letter, and keeps the letter so a reloaded game does too.
+        g.discovered_chars[pos] = g.code[pos];
+        g.solver.revealPosition(pos, g.code[pos]);
+
+        AVandiniEliaBzGuessGame.current_game.attempts_left -= 5;
+        AVandiniEliaBzGuessGame.stats.buy();
+        AVandiniEliaBzGuessGame.current_game.history.bought(AVandiniEliaBzGuessGame.current_game.attempts_left, pos, res_string[pos]);
+        System.out.println("\r" + Arrays.toString(res_string));
+
+
+//        not implementing this yet
+//        ArrayList<Integer> free_char_pos = new ArrayList<Integer>();
+//        for (int i = 0; i < 4; i++) {
+//            if (AVandiniEliaBzGuessGame.current_game.discovered_chars[i] == '_') {
+//                free_char_pos.add(i);
+//            }
+//        }
+//
+//        long start = System.currentTimeMillis();
+//
+//        long last_tick = System.currentTimeMillis();
+//
+//        StringBuilder[] canvas = new StringBuilder[]{
+//                new StringBuilder("                                   "),
+//                new StringBuilder("                                   "),
+//                new StringBuilder("                                   "),
+//                new StringBuilder("                                   "),
+//                new StringBuilder("                                   "),
+//                new StringBuilder("                                   "),
+//                new StringBuilder("                                   "),
+//                new StringBuilder("                                   "),
+//                new StringBuilder("                                   "),
+//        };
+//
+//        StringBuilder sequence = new StringBuilder();
+//        for (int i = 65; i < 123; i++) {
+//            sequence.append((char) i);
+//        }
+//
+//        Random r = new Random();
+//
+//        int index1 = r.nextInt(122 - 65);
+//
+//        for (StringBuilder y : canvas) {
+//            System.out.println("\r" + y);
+//        }
+//
+//
+//        while (System.currentTimeMillis() < start + 6000) {
+//            if (System.currentTimeMillis() < last_tick + ((System.currentTimeMillis() - start) / 10)) {
+//                continue;
+//            }
+//            AVandiniEliaBzGuessGame.eraseLinesUp(canvas.length);
+//            last_tick = System.currentTimeMillis();
+//
+//            int i = index1;
+//            String s = sequence.substring(i % sequence.length(), sequence.length()) + sequence.substring(0, i % sequence.length());
+//            for (int j = 0; j < 8; j++) {
+//                canvas[j + 1].setCharAt(2, s.charAt(8 - j));
+//            }
+//            index1 += 1;
+//
+//
+//            for (StringBuilder y : canvas) {
+//                System.out.println("\r" + y);
+//            }
+//
+//        }
+
+
+    }
+}
+
+/**
+ * Command to display the history of all guesses and evaluations of past games.
+ * Allows users to navigate through past game details.
+ */
+class CommandHistory extends Command {
+
+    /**
+     * Constructs a CommandHistory with predefined attributes.
+     */
+    CommandHistory() {
+        super();
+        category = CommandCategory.INGAME;
+        longc = "history";
+        shortc = "H";
+        description = "Show history of all guesses and evaluations of past games";
+        fullName = "History";
+    }
+
+    /**
+     * Executes the history command, displaying a navigable list of game histories.
+     * The list comes from the archive's index and the games in memory, an archived game is only read once selected.
+     *
+     * @param args the arguments passed with the command (not used for this command).
+     * @throws InvalidInputException if no game history is available or the selected game can't be read.
+     */
+    void exec(String[] args) throws InvalidInputException {
+        ArrayList<GameArchive.Entry> entries = GameArchive.entries();
+        for (Game g : AVandiniEliaBzGuessGame.games) {
+            entries.add(new GameArchive.Entry(g, -1, 0));
+        }
+        if (entries.isEmpty()) {
+            throw new InvalidInputException("Start a game before trying to access the game history");
+        }
+
+
+        AtomicBoolean loop = new AtomicBoolean(true);
+        AtomicBoolean cancel = new AtomicBoolean(false);
+        AtomicInteger seleciton = new AtomicInteger();
+        seleciton.set(entries.size() - 1);
+
+        KeyListenenThread.keymap.clear();
+        KeyListenenThread.keymap.put(KeyCodes.ENTER.getCode(), n -> loop.set(false));
+        KeyListenenThread.keymap.put(KeyCodes.DOWN_ARROW.getCode(), n -> seleciton.getAndIncrement());
+        KeyListenenThread.keymap.put(KeyCodes.UP_ARROW.getCode(), n -> seleciton.getAndDecrement());
+        KeyListenenThread.keymap.put(KeyCodes.C.getCode(), n -> cancel.set(true));
+        KeyListenenThread.keymap.put(KeyCodes.Q.getCode(), n -> cancel.set(true));
+        KeyListenenThread.keymap.put(KeyCodes.ESCAPE.getCode(), n -> cancel.set(true));
+
+        AVandiniEliaBzGuessGame.hideCursor();
+        System.out.println("\rSelect a game history to view");
+        System.out.println("\rUse Arrow keys to navigate selection, enter to view a game and C or esc to cancel");
+        System.out.println("\r");
+
+        while (loop.get() && !cancel.get()) {
+
+            for (int i = 0; i < entries.size(); i++) {
+                StringBuilder sb = new StringBuilder("\r");
+                GameArchive.Entry g = entries.get(i);
+//                sb.append(entries.size() - 1 - i).append(") ");
+                if (g.game != null && AVandiniEliaBzGuessGame.current_game == g.game) {
+                    sb.append(" @ ");
+                } else if (g.won()) {
+                    sb.append(" W ");
+                } else if (g.lost()) {
+                    sb.append(" L ");
+                } else {
+                    sb.append("   ");
+                }
+                if (g.lost() || g.won()) {
+                    sb.append(g.variant.decode(g.code)).append(" | ");
+                } else {
+                    sb.append("_".repeat(g.variant.pegs)).append(" | ");
+                }
+                sb.append(g.attempts_left).append(" | ");
+                sb.append(g.score).append(" | ");
+                sb.append(new Date(g.start));
+                if (i == seleciton.get()) {
+                    AVandiniEliaBzGuessGame.setAttribute(TextAttributes.INVERSE);
+                }
+                System.out.println(sb);
+                if (i == seleciton.get()) {
+                    AVandiniEliaBzGuessGame.resetAttrributes();
+                }
+            }
+            while (!AVandiniEliaBzGuessGame.KeyHandling()) {
+                AVandiniEliaBzGuessGame.wait(10);
+            }
+            if (seleciton.get() < 0) {
+                seleciton.set(entries.size() - 1);
+            }
+            if (seleciton.get() >= entries.size()) {
+                seleciton.set(0);
+            }
+
+            AVandiniEliaBzGuessGame.eraseLinesUp(entries.size());
+        }
+        AVandiniEliaBzGuessGame.eraseLinesUp(3);
+
+        if (cancel.get()) {
+            AVandiniEliaBzGuessGame.showCursor();
+            return;
+        }
+
+        GameHistory history;
+        try {
+            history = GameArchive.game(entries.get(seleciton.get())).history;
+        } catch (IOException e) {
+            AVandiniEliaBzGuessGame.showCursor();
+            throw new InvalidInputException("Unable to read the game from the archive (" + e.getMessage() + ")");
+        }
+
+        AtomicBoolean quit = new AtomicBoolean(false);
+
+        KeyListenenThread.keymap.clear();
+        KeyListenenThread.keymap.put(KeyCodes.Q.getCode(), n -> quit.set(true));
+        KeyListenenThread.keymap.put(KeyCodes.C.getCode(), n -> quit.set(true));
+
+        System.out.println("Press Q to close this game\n");
+        System.out.println("\r" + history.render("\n\r"));
+
+        AVandiniEliaBzGuessGame.hideCursor();
+        while (!quit.get()) {
+            while (!AVandiniEliaBzGuessGame.KeyHandling()) {
+                AVandiniEliaBzGuessGame.wait(10);
+            }
+        }
+
+        AVandiniEliaBzGuessGame.eraseLinesUp(history.lines() + 3);
+
+        exec(args);
+    }
+}
+
+/**
+ * Command to change the cursor style during gameplay.
+ * Allows users to select a different cursor style from the available options.
+ */
+class CommandChangeCursorStyle extends Command {
+
+    /**
+     * Constructs a CommandChangeCursorStyle with predefined attributes.
+     */
+    CommandChangeCursorStyle() {
+        super();
+        category = CommandCategory.INGAME;
+        longc = "cursor";
+        shortc = "C";
+        description = "Change cursor style (may not work on some devices)";
+        fullName = "Change Cursor Style";
+    }
+
+    /**
+     * Executes the command to allow the user to change the cursor style.
+     * Provides an interactive menu for selecting the style.
+     *
+     * @param args the arguments passed with the command, optionally containing the style index.
+     * @throws InvalidInputException if the input is invalid or an error occurs.
+     */
+    void exec(String[] args) throws InvalidInputException {
+        AtomicInteger seleciton = new AtomicInteger(AVandiniEliaBzGuessGame.cursorStyle.getIndex());
+
+        try {
+            seleciton.set(Integer.parseInt(args[0]));
+        } catch (Exception e) {
+
+            AtomicBoolean loop = new AtomicBoolean(true);
+            AtomicBoolean cancel = new AtomicBoolean(false);
+
+            KeyListenenThread.keymap.clear();
+            KeyListenenThread.keymap.put(KeyCodes.ENTER.getCode(), n -> loop.set(false));
+            KeyListenenThread.keymap.put(KeyCodes.DOWN_ARROW.getCode(), n -> seleciton.getAndIncrement());
+            KeyListenenThread.keymap.put(KeyCodes.UP_ARROW.getCode(), n -> seleciton.getAndDecrement());
+            KeyListenenThread.keymap.put(KeyCodes.C.getCode(), n -> cancel.set(true));
+            KeyListenenThread.keymap.put(KeyCodes.Q.getCode(), n -> cancel.set(true));
+            KeyListenenThread.keymap.put(KeyCodes.ESCAPE.getCode(), n -> cancel.set(true));
+
+            System.out.println("\rSelect a cursor style to apply");
+            System.out.println("\rUse Arrow keys to navigate selection, enter to confirm, and C or ESC to cancel");
+            System.out.println("\r");
+
+            CursorStyles prev_style = AVandiniEliaBzGuessGame.cursorStyle;
+
+            ArrayList<String> list = new ArrayList<>();
+            list.add("\r ● Blink Block ");
+            list.add("\r ● Blinking Block ");
+            list.add("\r ● Steady Block ");
+            list.add("\r ● Blinking Underline ");
+            list.add("\r ● Steady Underline ");
+            list.add("\r ● Blinking Bar ");
+            list.add("\r ● Steady Bar ");
+
+            while (loop.get() && !cancel.get()) {
+                for (int i = 0; i < list.size(); i++) {
+                    if (seleciton.get() == i) {
+                        AVandiniEliaBzGuessGame.setAttribute(TextAttributes.INVERSE);
+                    }
+                    System.out.print(list.get(i));
+                    AVandiniEliaBzGuessGame.resetAttrributes();
+                    if (seleciton.get() == i) {
+                        System.out.print("  ");
+                        AVandiniEliaBzGuessGame.saveCursorPosition();
+                        AVandiniEliaBzGuessGame.setCursorStyle(Objects.requireNonNull(CursorStyles.getCursorStyles(i)));
+                    }
+                    System.out.println();
+                }
+                AVandiniEliaBzGuessGame.restoreCursorPosition();
+
+
+//                long start = System.currentTimeMillis();
+                int prev_seleciton = seleciton.get();
+                while (!AVandiniEliaBzGuessGame.KeyHandling()) {
+                    AVandiniEliaBzGuessGame.wait(10);
+                }
+                if (seleciton.get() < 0) {
+                    seleciton.set(6);
+                }
+                if (seleciton.get() > 6) {
+                    seleciton.set(0);
+                }
+
+                AVandiniEliaBzGuessGame.eraseLinesUp(prev_seleciton);
+            }
+            AVandiniEliaBzGuessGame.eraseLinesUp(3);
+            AVandiniEliaBzGuessGame.eraseLinesToEndOfScreen();
+
+            if (cancel.get()) {
+                AVandiniEliaBzGuessGame.setCursorStyle(prev_style);
+            } else {
+                AVandiniEliaBzGuessGame.cursorStyle = CursorStyles.getCursorStyles(seleciton.get());
+            }
+        }
+    }
+}
+
+/**
+ * Command to enable AI to play the game for the user.
+ * Automates gameplay by simulating guesses based on a minimax strategy.
+ */
+class CommandAI extends Command {
+
+    /**
+     * Constructs a CommandAI with predefined attributes.
+     */
+    CommandAI() {
+        super();
+        category = CommandCategory.STORE;
+        longc = "ai";
+        shortc = "a";
+        description = "Plays the game for you. Strategy: minimax, expected, entropy, parts or optimal";
+        fullName = "AI";
+    }
+
+    /**
+     * Executes the AI command, automating gameplay for the user.
+     * Simulates guesses until the game is won or lost.
+     *
+     * @param args the arguments passed with the command, optionally containing the name of the strategy.
+     * @throws InvalidInputException if the strategy is unknown.
+     */
+    void exec(String[] args) throws InvalidInputException {
+        SolverStrategy strategy = AVandiniEliaBzGuessGame.getStrategy(args);
+        Speculator.strategy = strategy;
+        try {
+            Game g = AVandiniEliaBzGuessGame.current_game;
+            g.ai = true;
+            g.history.aiActivated(strategy);
+            while (!g.won && !g.lost) {
+                AVandiniEliaBzGuessGame.setAttribute(new AbstarctAttributes[]{FColors.RED, TextAttributes.BRIGHT});
+                System.out.print("\r" + g.attempts_left + ">");
+                AVandiniEliaBzGuessGame.resetAttrributes();
+                long time_limit = Speculator.await(g, strategy);
+                SearchResult result = g.solver.search(strategy, g.matches, g.guesses, time_limit);
+                char[] nextGuess = result.guess();
+                if (!result.complete()) {
+                    g.history.aiTimedOut(Solver.time_limit);
+                }
+                String res = g.parseGuess(new String(nextGuess));
+                Speculator.speculate(g); // gets a head start on the next guess while this one is typed
+                for (char c : nextGuess) {
+                    TimeUnit.MILLISECONDS.sleep(250);
+                    System.out.print(c);
+                }
+                TimeUnit.MILLISECONDS.sleep(250);
+                System.out.println(" " + res);
+                g.attempts_left--;
+                if (g.attempts_left <= 0) {
+                    g.lost = true;
+                }
+                AVandiniEliaBzGuessGame.saveGameState();
+            }
+        } catch (InvalidInputException e) {
+            System.out.println(e.getMessage());
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
+
+class CommandBuyAI extends Command {
+
+    CommandBuyAI() {
+        super();
+        category = CommandCategory.STORE;
+        longc = "bai";
+        shortc = "B";
+        description = "Uses \uD83C\uDF1FAI\uD83C\uDF1F to generate a optimal guess. Costs 5 attempts, no API key needed. Takes a strategy like .ai";
+        fullName = "Buy AI guess";
+    }
+
+    void exec(String[] args) throws InvalidInputException {
+        SolverStrategy strategy = AVandiniEliaBzGuessGame.getStrategy(args);
+        Speculator.strategy = strategy;
+        Game g = AVandiniEliaBzGuessGame.current_game;
+        g.attempts_left -= 5;
+        long time_limit = Speculator.await(g, strategy);
+        SearchResult result = g.solver.search(strategy, g.matches, g.guesses, time_limit);
+        char[] nextGuess = result.guess();
+        AVandiniEliaBzGuessGame.stats.buyAI();
+        g.history.guessBought(strategy, result.complete(), Solver.time_limit, g.variant.encode(nextGuess));
+        String res = "\r" + "Sure, here is a optimal " + g.variant.pegs + "-letter guess: [" + new String(nextGuess) + "] .Let me know if you have anymore questions!";
+
+        AVandiniEliaBzGuessGame.hideCursor();
+        AVandiniEliaBzGuessGame.eraseLine();
+        System.out.print(".");
+        AVandiniEliaBzGuessGame.wait(250);
+        AVandiniEliaBzGuessGame.eraseLine();
+        System.out.print("..");
+        AVandiniEliaBzGuessGame.wait(250);
+        AVandiniEliaBzGuessGame.eraseLine();
+        System.out.print("...");
+        AVandiniEliaBzGuessGame.wait(1000);
+        AVandiniEliaBzGuessGame.eraseLine();
+        AVandiniEliaBzGuessGame.wait(250);
+        System.out.print(".");
+        AVandiniEliaBzGuessGame.wait(250);
+        AVandiniEliaBzGuessGame.eraseLine();
+        System.out.print("..");
+        AVandiniEliaBzGuessGame.wait(250);
+        AVandiniEliaBzGuessGame.eraseLine();
+        System.out.print("...");
+        AVandiniEliaBzGuessGame.wait(1000);
+        AVandiniEliaBzGuessGame.eraseLine();
+        AVandiniEliaBzGuessGame.fancyprint(res);
+    }
+}
+
+/**
+ * Command to count the remaining possible solutions based on feedback from guesses.
+ * Costs 2 attempts and updates the game history with the count.
+ */
+class CommandRemains extends Command {
+
+    /**
+     * Constructs a CommandRemains with predefined attributes.
+     */
+    CommandRemains() {
+        super();
+        category = CommandCategory.STORE;
+        longc = "remains";
+        shortc = "R";
+        description = "Counts available solutions based on the guess's feedback. Costs 2 attempts";
+        fullName = "Remains";
+    }
+
+    /**
+     * Executes the command to count possible solutions based on feedback from previous guesses.
+     *
+     * @param args the arguments passed with the command (not used for this command).
+     * @throws InvalidInputException if an error occurs during solution counting.
+     */
+    void exec(String[] args) throws InvalidInputException {
+        Game g = AVandiniEliaBzGuessGame.current_game;
+        int solution_count = g.solver.reduceCodes(g.matches, g.guesses);
+        g.attempts_left -= 2;
+        AVandiniEliaBzGuessGame.stats.remains();
+        g.history.remains(solution_count);
+        String res = "\r" + "Based on past guesses' feedback, there are " + solution_count + " viable solutions.";
+        AVandiniEliaBzGuessGame.fancyprint(res);
+    }
+}
+
+/**
+ * Command to change the number of threads the solver uses to evaluate guesses.
+ */
+class CommandSolverThreads extends Command {
+
+    /**
+     * Constructs a CommandSolverThreads with predefined attributes.
+     */
+    CommandSolverThreads() {
+        super();
+        category = CommandCategory.INGAME;
+        longc = "threads";
+        shortc = "T";
+        description = "Show or set the number of threads used by the AI";
+        fullName = "Solver Threads";
+    }
+
+    /**
+     * Executes the command, printing the current thread count or updating it.
+     *
+     * @param args the arguments passed with the command, optionally containing the new thread count.
+     * @throws InvalidInputException if the thread count is not a positive number.
+     */
+    void exec(String[] args) throws InvalidInputException {
+        if (args.length > 1) {
+            throw new InvalidInputException("Only one argument expected");
+        }
+        if (args.length == 1) {
+            int threads;
+            try {
+                threads = Integer.parseInt(args[0]);
+            } catch (NumberFormatException e) {
+                throw new InvalidInputException("Thread count must be a number");
+            }
+            if (threads < 1) {
+                throw new InvalidInputException("Thread count must be at least 1");
+            }
+            Solver.threads = threads;
+        }
+        System.out.println("\rThe AI is using " + Solver.threads + " thread(s)");
+    }
+}
+
+/**
+ * Command to show or change how long the AI may think about a guess.
+ */
+class CommandSolverTimeLimit extends Command {
+
+    /**
+     * Constructs a CommandSolverTimeLimit with predefined attributes.
+     */
+    CommandSolverTimeLimit() {
+        super();
+        category = CommandCategory.INGAME;
+        longc = "timelimit";
+        shortc = "L";
+        description = "Show or set how many milliseconds the AI may think per guess, 0 for no limit";
+        fullName = "Solver Time Limit";
+    }
+
+    /**
+     * Executes the command, printing the current time limit or updating it.
+     *
+     * @param args the arguments passed with the command, optionally containing the new limit in milliseconds.
+     * @throws InvalidInputException if the limit is not a number or negative.
+     */
+    void exec(String[] args) throws InvalidInputException {
+        if (args.length > 1) {
+            throw new InvalidInputException("Only one argument expected");
+        }
+        if (args.length == 1) {
+            long limit;
+            try {
+                limit = Long.parseLong(args[0]);
+            } catch (NumberFormatException e) {
+                throw new InvalidInputException("Time limit must be a number");
+            }
+            if (limit < 0) {
+                throw new InvalidInputException("Time limit can't be negative");
+            }
+            Solver.time_limit = limit;
+        }
+        System.out.println("\rThe AI " + (Solver.time_limit == 0 ? "has no time limit" : "may think " + Solver.time_limit + " ms per guess"));
+    }
+}
+
+/**
+ * Command to show the statistics of the player.
+ */
+class CommandStats extends Command {
+
+    /**
+     * Constructs a CommandStats with predefined attributes.
+     */
+    CommandStats() {
+        super();
+        category = CommandCategory.BASIC;
+        longc = "stats";
+        shortc = "s";
+        description = "Show your statistics: win rate, guesses, scores, time and store use";
+        fullName = "Statistics";
+    }
+
+    /**
+     * Executes the command, printing the statistics kept since the first game.
+     *
+     * @param args the arguments passed with the command (not used for this command).
+     */
+    void exec(String[] args) {
+        for (String line : AVandiniEliaBzGuessGame.stats.describe(AVandiniEliaBzGuessGame.highscore)) {
+            System.out.println("\r" + line);
+        }
+    }
+}
+
+/**
+ * Command to show the leaderboard of the player's best games.
+ */
+class CommandTop extends Command {
+
+    /**
+     * Constructs a CommandTop with predefined attributes.
+     */
+    CommandTop() {
+        super();
+        category = CommandCategory.BASIC;
+        longc = "top";
+        shortc = "t";
+        description = "Show your " + Leaderboard.SIZE + " best scores and your wins with the fewest guesses";
+        fullName = "Leaderboard";
+    }
+
+    /**
+     * Executes the command, printing both lists of the leaderboard.
+     *
+     * @param args the arguments passed with the command (not used for this command).
+     * @throws InvalidInputException if no game was won yet.
+     */
+    void exec(String[] args) throws InvalidInputException {
+        Leaderboard top = AVandiniEliaBzGuessGame.stats.top;
+        if (top.byScore().isEmpty()) {
+            throw new InvalidInputException("Win a game to get on the leaderboard");
+        }
+        System.out.println("\rHighest scores:");
+        print(top.byScore());
+        System.out.println("\rFewest guesses:");
+        print(top.byGuesses());
+    }
+
+    /**
+     * Prints a list of the leaderboard.
+     *
+     * @param entries the games, best first.
+     */
+    private static void print(List<Leaderboard.Entry> entries) {
+        for (int i = 0; i < entries.size(); i++) {
+            Leaderboard.Entry entry = entries.get(i);
+            System.out.printf("\r%2d. %6d | %2d guesses | %s | %s%n", i + 1, entry.score(), entry.guesses(),
+                    entry.variant(), new Date(entry.start()));
+        }
+    }
+}
+
+/**
+ * Command to show or change how long saves wait to be written together.
+ */
+class CommandSaveWindow extends Command {
+
+    /**
+     * Constructs a CommandSaveWindow with predefined attributes.
+     */
+    CommandSaveWindow() {
+        super();
+        category = CommandCategory.SECRET;
+        longc = "savewindow";
+        shortc = "W";
+        description = "Show or set how many milliseconds saves wait to be written together";
+        fullName = "Save Window";
+    }
+
+    /**
+     * Executes the command, printing the current window or updating it.
+     *
+     * @param args the arguments passed with the command, optionally containing the new window in milliseconds.
+     * @throws InvalidInputException if the window is not a number or negative.
+     */
+    void exec(String[] args) throws InvalidInputException {
+        if (args.length > 1) {
+            throw new InvalidInputException("Only one argument expected");
+        }
+        if (args.length == 1) {
+            long window;
+            try {
+                window = Long.parseLong(args[0]);
+            } catch (NumberFormatException e) {
+                throw new InvalidInputException("Save window must be a number");
+            }
+            if (window < 0) {
+                throw new InvalidInputException("Save window can't be negative");
+            }
+            GameStateWriter.window = window;
+        }
+        System.out.println("\rSaves are written " + (GameStateWriter.window == 0 ? "right away" : "within " + GameStateWriter.window + " ms"));
+    }
+}
+
+/**
+ * Command to inspect or clear the cache of solver answers.
+ */
+class CommandSolverCache extends Command {
+
+    /**
+     * Constructs a CommandSolverCache with predefined attributes.
+     */
+    CommandSolverCache() {
+        super();
+        category = CommandCategory.INGAME;
+        longc = "cache";
+        shortc = "K";
+        description = "Show the AI's cache statistics, '.K clear' empties it";
+        fullName = "Solver Cache";
+    }
+
+    /**
+     * Executes the command, printing the cache statistics and clearing it if requested.
+     *
+     * @param args the arguments passed with the command, optionally "clear".
+     * @throws InvalidInputException if the argument is unknown.
+     */
+    void exec(String[] args) throws InvalidInputException {
+        if (args.length > 0) {
+            if (!args[0].equalsIgnoreCase("clear")) {
+                throw new InvalidInputException("Unknown argument, expected 'clear'");
+            }
+            SolverCache.clear();
+        }
+        System.out.println("\rAI cache: " + SolverCache.stats());
+    }
+}
+
+/**
+ * Command to switch between normal games and games against the evil code maker.
+ */
+class CommandEvil extends Command {
+
+    /**
+     * Constructs a CommandEvil with predefined attributes.
+     */
+    CommandEvil() {
+        super();
+        category = CommandCategory.INGAME;
+        longc = "evil";
+        shortc = "e";
+        description = "Toggle evil mode: the code is only picked once one code fits your guesses";
+        fullName = "Evil Mode";
+    }
+
+    /**
+     * Executes the command, toggling evil mode and starting a new game.
+     *
+     * @param args the arguments passed with the command (not used for this command).
+     */
+    void exec(String[] args) {
+        AVandiniEliaBzGuessGame.evil = !AVandiniEliaBzGuessGame.evil;
+        System.out.println("\rEvil mode " + (AVandiniEliaBzGuessGame.evil ? "on" : "off"));
+        Game g = AVandiniEliaBzGuessGame.current_game;
+        g.lost = true;
+        AVandiniEliaBzGuessGame.stats.record(g); // given up
+        AVandiniEliaBzGuessGame.newGame();
+    }
+}
+
+/**
+ * Command to change the variant of the game, e.g. 8 characters and codes of 5.
+ * Starts a new game using the new variant.
+ */
+class CommandVariant extends Command {
+
+    /**
+     * Constructs a CommandVariant with predefined attributes.
+     */
+    CommandVariant() {
+        super();
+        category = CommandCategory.INGAME;
+        longc = "variant";
+        shortc = "v";
+        description = "Show or set characters and code length, e.g. '.v 8 5'";
+        fullName = "Variant";
+    }
+
+    /**
+     * Executes the command, printing the current variant or starting a new game with the given one.
+     *
+     * @param args the arguments passed with the command, optionally containing the number of characters and the code length.
+     * @throws InvalidInputException if the variant is invalid or unsupported.
+     */
+    void exec(String[] args) throws InvalidInputException {
+        if (args.length == 0) {
+            System.out.println("\rPlaying with " + AVandiniEliaBzGuessGame.current_game.variant.colors + " characters and codes of "
+                    + AVandiniEliaBzGuessGame.current_game.variant.pegs);
+            return;
+        }
+        if (args.length != 2) {
+            throw new InvalidInputException("Expected the number of characters and the code length");
+        }
+        try {
+            AVandiniEliaBzGuessGame.variant = new Variant(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+        } catch (NumberFormatException e) {
+            throw new InvalidInputException("Characters and code length must be numbers");
+        } catch (IllegalArgumentException e) {
+            throw new InvalidInputException("Supported are 2 to 16 characters, codes of 1 to 8 and up to " + Variant.MAX_CODE_COUNT + " codes");
+        }
+        Game g = AVandiniEliaBzGuessGame.current_game;
+        g.lost = true;
+        AVandiniEliaBzGuessGame.stats.record(g); // given up
+        AVandiniEliaBzGuessGame.newGame();
+    }
+}
+
+/**
+ * Command to grant the player (almost) unlimited attempts.
+ * This is categorized as a secret command and is primarily for debugging or cheating.
+ */
+class CommandUnlimitedAttempts extends Command {
+
+    /**
+     * Constructs a CommandUnlimitedAttempts with predefined attributes.
+     */
+    CommandUnlimitedAttempts() {
+        super();
+        category = CommandCategory.SECRET;
+        longc = "unlimited";
+        shortc = "u";
+        description = "Gives you (almost) unlimited attempts";
+        fullName = "Unlimited Attempts";
+    }
+
+    /**
+     * Executes the command to grant the player an extremely high number of attempts.
+     *
+     * @param args the arguments passed with the command (not used for this command).
+     * @throws InvalidInputException if an error occurs while processing the command.
+     */
+    void exec(String[] args) throws InvalidInputException {
+        Game g = AVandiniEliaBzGuessGame.current_game;
+        g.attempts_left = Long.MAX_VALUE;
+    }
+}
+
+/**
+ * Represents a single game instance.
+ * Manages the gameplay loop, the secret code, attempts, score, and game history.
+ */
+class Game {
+    Variant variant = AVandiniEliaBzGuessGame.variant; // The variant of the game.
+    char[] code = new char[variant.pegs]; // The secret code for the game.
+    long attempts_left = 20L; // The number of attempts the player has left.
+    GameHistory history = new GameHistory(variant); // The history of guesses and feedback.
+    boolean won = false; // Indicates if the game is won.
+    boolean lost = false; // Indicates if the game is lost.
+    Date start_date = new Date(); // The start date of the game.
+    long id; // Tells the game apart from every other one, even from games started at the same time.
+    long score = 0; // The player's score.
+    Solver solver = new Solver(variant); // The solver instance for generating guesses and solutions.
+    ArrayList<Point> matches = new ArrayList<>(); // The list of feedback points for guesses.
+    ArrayList<char[]> guesses = new ArrayList<>(); // The list of guesses made by the player.
+    boolean ai = false; // Indicates if the AI is playing.
+    char[] discovered_chars = "_".repeat(variant.pegs).toCharArray(); // Partially discovered characters in the code.
+    CandidateSet evil_codes = AVandiniEliaBzGuessGame.evil ? CodeUniverse.of(variant).all.copy() : null; // Codes the evil code maker can still pick, null in normal games.
+    private int[] evil_counter; // Scratch space for answering guesses in evil mode.
+
+    TextBox textBox = new TextBox(); // The text box for player input.
+
+    /**
+     * Constructs a new Game instance with a randomly generated secret code.
+     */
+    public Game() {
+        Random r = new Random();
+        for (int i = 0; i < variant.pegs; i++) {
+            code[i] = variant.options[r.nextInt(variant.colors)];
+        }
+        id = r.nextLong();
+    }
+
+    /**
+     * Starts the game by initializing history and entering the game loop.
+     */
+    void startGame() {
+        this.history = new GameHistory(variant);
+        this.history.started(start_date.getTime());
+        if (evil_codes != null) {
+            this.history.evil();
+        }
+        this.gameloop();
+    }
+
+    /**
+     * Executes the main game loop.
+     * Continuously processes player turns until the game is won or lost.
+     * Saves the game state after each turn.
+     */
+    void gameloop() {
+        while (!lost && !won) {
+
+            execeTurn();
+            AVandiniEliaBzGuessGame.saveGameState();
+            if (AVandiniEliaBzGuessGame.current_game != this) {
+                return; // Exit loop if the current game has changed.
+            }
+        }
+        finishGame();
+    }
+
+    /**
+     * Executes a single turn in the game.
+     * Parses player input and checks if the game has been lost due to running out of attempts.
+     */
+    void execeTurn() {
+        Speculator.speculate(this);
+        parseInput();
+        if (attempts_left <= 0 && !won && !ai) {
+            lost = true;
+        }
+    }
+
+    /**
+     * Prompts the player for input and returns the entered string.
+     *
+     * @return the player's input.
+     */
+    String askInput() {
+        Scanner sc = new Scanner(System.in);
+        AVandiniEliaBzGuessGame.setAttribute(new AbstarctAttributes[]{FColors.GREEN, TextAttributes.BRIGHT});
+        System.out.print(attempts_left + ">");
+        AVandiniEliaBzGuessGame.resetAttrributes();
+        return sc.nextLine();
+    }
+
+    /**
+     * Parses a command entered by the player and executes it.
+     *
+     * @param input the command to parse.
+     * @param args  the arguments for the command.
+     * @throws InvalidInputException if the command is invalid or unknown.
+     */
+    void parseCommand(String input, String[] args) throws InvalidInputException {
+        for (Command command : AVandiniEliaBzGuessGame.comands) {
+            if (command.shortc.equals(input) || command.longc.equalsIgnoreCase(input)) {
+                command.exec(args);
+                AVandiniEliaBzGuessGame.saveGameState();
+                return;
+            }
+        }
+        throw new InvalidInputException("Unknown command");
+    }
+
+    /**
+     * Parses player input and determines whether it's a command or a guess.
+     * Handles validation and feedback for guesses.
+     */
+    void parseInput() {
+        String input = "";
+        try {
+            long asked = System.currentTimeMillis();
+            input = textBox.get_input(this);
+            if (lost || won || ai || AVandiniEliaBzGuessGame.current_game != this) {
+                return;
+            }
+            if (input.isEmpty()) {
+                throw new InvalidInputException("Please input a command or a " + variant.pegs + "-character sequence");
+            }
+            if (input.charAt(0) == '.') {
+                String temp = input.substring(1);
+                String[] args = temp.split(" ");
+                parseCommand(args[0], Arrays.copyOfRange(args, 1, args.length));
+                return;
+            }
+            if (input.length() != variant.pegs) {
+                throw new InvalidInputException("Input must be " + variant.pegs + " characters long");
+            }
+            if (!variant.isValidCode(input)) {
+                throw new InvalidInputException("Input must consist of " + variant.describeOptions());
+            }
+            AVandiniEliaBzGuessGame.stats.think(System.currentTimeMillis() - asked);
+//            AVandiniEliaBzGuessGame.eraseLine();
+            AVandiniEliaBzGuessGame.eraseLinesUp(1);
+            AVandiniEliaBzGuessGame.setAttribute(new AbstarctAttributes[]{FColors.GREEN, TextAttributes.BRIGHT});
+            System.out.print("\r" + attempts_left + "> ");
+            AVandiniEliaBzGuessGame.resetAttrributes();
+            System.out.println(input + " " + parseGuess(input));
+            attempts_left--;
+            if (attempts_left <= 0) {
+                lost = true;
+            }
+        } catch (InvalidInputException e) {
+            handleInputError(input, e);
+        }
+    }
+
+    /**
+     * Handles errors during input parsing, providing feedback to the player.
+     *
+     * @param input the invalid input provided by the player.
+     * @param e     the exception containing the error message.
+     */
+    private void handleInputError(String input, InvalidInputException e) {
+        AVandiniEliaBzGuessGame.eraseLinesUp(1);
+        AVandiniEliaBzGuessGame.setAttribute(TextAttributes.BRIGHT);
+        AVandiniEliaBzGuessGame.setAttribute(FColors.RED);
+        System.out.print(e.getMessage());
+        AVandiniEliaBzGuessGame.setAttribute(TextAttributes.RESET);
+
+        long start = System.currentTimeMillis();
+        long last_tick = System.currentTimeMillis();
+
+        AVandiniEliaBzGuessGame.hideCursor();
+
+        while (System.currentTimeMillis() < start + 3000) {
+            if (System.currentTimeMillis() < last_tick + 1) {
+                continue;
+            }
+            last_tick = System.currentTimeMillis();
+            if (!KeyListenenThread.active_keys.isEmpty()) {
+                break;
+            }
+            AVandiniEliaBzGuessGame.eraseLine();
+
+            AVandiniEliaBzGuessGame.setAttribute(new AbstarctAttributes[]{FColors.GREEN, TextAttributes.BRIGHT});
+            System.out.print(attempts_left + "> ");
+            AVandiniEliaBzGuessGame.resetAttrributes();
+            AVandiniEliaBzGuessGame.setAttribute(TextAttributes.UNDERLINE);
+            System.out.print(input);
+            AVandiniEliaBzGuessGame.resetAttrributes();
+            if (System.currentTimeMillis() % 1000 < 500) {
+                AVandiniEliaBzGuessGame.setAttribute(TextAttributes.BRIGHT);
+            }
+            AVandiniEliaBzGuessGame.setAttribute(FColors.RED);
+            System.out.print(" " + e.getMessage());
+            AVandiniEliaBzGuessGame.setAttribute(TextAttributes.RESET);
+        }
+        AVandiniEliaBzGuessGame.showCursor();
+        parseInput();
+    }
+
+    /**
+     * Parses a player's guess and provides feedback in the form of X (correct position)
+     * and - (correct character, wrong position). Updates the game's history.
+     *
+     * @param input the player's guess.
+     * @return a string representing the feedback.
+     */
+    String parseGuess(String input) {
+        int guess = variant.encode(input.toCharArray());
+        int feedback = evil_codes == null ? variant.feedback(variant.encode(code), guess) : evilFeedback(guess);
+        StringBuilder result = new StringBuilder();
+        result.append("X".repeat(variant.exact(feedback)));
+        result.append("-".repeat(variant.partial(feedback)));
+        matches.add(variant.toPoint(feedback));
+        guesses.add(input.toCharArray());
+        if (variant.exact(feedback) >= variant.pegs) {
+            won = true;
+        }
+        AVandiniEliaBzGuessGame.current_game.history.guess(attempts_left, input, feedback);
+        return result.toString();
+    }
+
+    /**
+     * Answers a guess as the evil code maker, which hasn't picked a secret code yet.
+     * It gives the feedback that leaves it the most codes to choose from and drops every other code.
+     * Winning feedback is only given once it is the only code left, since every other feedback
+     * leaves at least as many codes and comes first on ties. The secret code is kept
+     * pointing at one of the remaining codes so the rest of the game always has one to show.
+     *
+     * @param guess the packed guess.
+     * @return the packed feedback.
+     */
+    int evilFeedback(int guess) {
+        FeedbackTable table = FeedbackTable.of(variant);
+        if (evil_counter == null) {
+            evil_counter = new int[variant.feedback_count];
+        }
+        Solver.partition(table, guess, evil_codes, evil_counter);
+        int feedback = 0;
+        for (int f = 1; f < evil_counter.length; f++) {
+            if (evil_counter[f] > evil_counter[feedback]) {
+                feedback = f;
+            }
+        }
+        for (int c = evil_codes.nextSetBit(0); c >= 0; c = evil_codes.nextSetBit(c + 1)) {
+            if (table.feedback(guess, c) != feedback) {
+                evil_codes.remove(c);
+            }
+        }
+        if (!evil_codes.contains(variant.encode(code))) {
+            code = variant.decode(evil_codes.nextSetBit(0));
+        }
+        return feedback;
+    }
+
+    /**
+     * Reveals the character at a position of the evil code maker's code, choosing the one that leaves the most codes.
+     *
+     * @param pos the position, 0 being the leftmost one.
+     */
+    void evilReveal(int pos) {
+        if (evil_codes == null) {
+            return;
+        }
+        int[] counter = new int[variant.colors];
+        for (int c = evil_codes.nextSetBit(0); c >= 0; c = evil_codes.nextSetBit(c + 1)) {
+            counter[variant.digit(c, pos)]++;
+        }
+        int best = 0;
+        for (int digit = 1; digit < counter.length; digit++) {
+            if (counter[digit] > counter[best]) {
+                best = digit;
+            }
+        }
+        evil_codes.and(FeedbackTable.of(variant).positionMask(pos, variant.options[best]));
+        if (!evil_codes.contains(variant.encode(code))) {
+            code = variant.decode(evil_codes.nextSetBit(0));
+        }
+    }
+
+    /**
+     * Compares a guess against the secret code and determines feedback.
+     * Feedback is provided in terms of the number of exact matches (X) and partial matches (-).
+     *
+     * @param variant the variant of the game.
+     * @param code    the secret code.
+     * @param guess   the player's guess.
+     * @return a Point object where `x` represents exact matches and `y` represents partial matches.
+     */
+    static Point checkGuess(Variant variant, char[] code, char[] guess) {
+        return variant.toPoint(variant.feedback(variant.encode(code), variant.encode(guess)));
+    }
+
+    /**
+     * Calculates the score based on time and attempts left.
+     *
+     * @param time          the time taken
+     * @param attempts_left the remaining attempts
+     * @return the calculated score
+     */
+    static long score_calc(long time, long attempts_left) {
+
+        // prevents absurd scores when using cheat commands
+        if (attempts_left > 19
+        ) {
+            attempts_left = 19;
+        }
+        double secs_per_attempt = (double) time / (20 - attempts_left) / 1000;
+        if (secs_per_attempt > 60) {
+            secs_per_attempt = 60;
+        }
+        double score = ((pow(secs_per_attempt, 2) / 180) - (secs_per_attempt * (13f / 20f)) + 20); // x^2/180 - x*13/20 + 20
+        return (long) (score * 10) * (attempts_left * 10);
+    }
+
+    /**
+     * Finalizes the game by saving the game state and displaying results.
+     * Prompts the player with a win or lose screen based on the game outcome.
+     */
+    void finishGame() {
+        long diff = abs(new Date().getTime() - this.start_date.getTime());
+        if (won) {
+            score = score_calc(diff, attempts_left);
+            if (score > AVandiniEliaBzGuessGame.highscore && !AVandiniEliaBzGuessGame.current_game.ai) {
+                AVandiniEliaBzGuessGame.highscore = score;
+            }
+            AVandiniEliaBzGuessGame.stats.record(this);
+            if (AVandiniEliaBzGuessGame.current_game.ai) {
+                AVandiniEliaBzGuessGame.aiWinScreen();
+                AVandiniEliaBzGuessGame.current_game.score = 0;
+            } else {
+                AVandiniEliaBzGuessGame.winScreen();
+            }
+        } else {
+            score = 0;
+            AVandiniEliaBzGuessGame.stats.record(this);
+            if (AVandiniEliaBzGuessGame.current_game.ai) {
+                AVandiniEliaBzGuessGame.aiLooseScreen();
+            } else {
+                AVandiniEliaBzGuessGame.loosescreen();
+            }
+        }
+    }
+}
+
+/**
+ * The history of a game, kept as a list of events and only turned into text when it is shown.
+ * An event is a type and two numbers stored in growing arrays, so adding one copies nothing and the number
+ * of lines is known without rendering. Every event is one line, except text from before events existed.
+ * A game keeps at most {@link #MAX_EVENTS} events, later ones are only counted.
+ */
+class GameHistory {
+    static final int MAX_EVENTS = 1 << 16; // The number of events a game keeps at most.
+
+    private static final byte TEXT = 0; // Text of a history saved by an older version, a: index in texts.
+    private static final byte STARTED = 1; // The game started, a: start date in milliseconds.
+    private static final byte EVIL = 2; // The evil code maker plays.
+    private static final byte GUESS = 3; // A guess, a: attempts left, b: code << 32 | lower case positions << 16 | feedback.
+    private static final byte BUY = 4; // A bought letter, a: attempts left, b: position << 16 | letter.
+    private static final byte AI = 5; // The AI took over, b: strategy.
+    private static final byte AI_TIMEOUT = 6; // The AI ran out of time, a: time limit.
+    private static final byte BUY_AI = 7; // A bought guess, a: time limit it was cut off at or -1, b: strategy << 32 | code.
+    private static final byte REMAINS = 8; // Remaining solutions were counted, a: count.
+
+    private final Variant variant; // The variant of the game, to render codes and feedback.
+    private byte[] types = new byte[8]; // The types of the events.
+    private long[] values = new long[16]; // The numbers of the events, a at 2 * i and b at 2 * i + 1.
+    private int size = 0; // The number of events kept.
+    private int dropped = 0; // The number of events not kept.
+    private int lines = 0; // The number of lines of the kept events.
+    private ArrayList<String> texts; // Texts of TEXT events, null while there are none.
+
+    /**
+     * Constructs an empty history.
+     *
+     * @param variant the variant of the game.
+     */
+    GameHistory(Variant variant) {
+        this.variant = variant;
+    }
+
+    /**
+     * Records that the game started.
+     *
+     * @param start the start date in milliseconds.
+     */
+    void started(long start) {
+        add(STARTED, start, 0, 1);
+    }
+
+    /**
+     * Records that the evil code maker plays the game.
+     */
+    void evil() {
+        add(EVIL, 0, 0, 1);
+    }
+
+    /**
+     * Records a guess.
+     *
+     * @param attempts_left the attempts left before the guess.
+     * @param input         the guess as it was typed.
+     * @param feedback      the packed feedback.
+     */
+    void guess(long attempts_left, String input, int feedback) {
+        int lower = 0;
+        for (int i = 0; i < input.length(); i++) {
+            if (Character.isLowerCase(input.charAt(i))) {
+                lower |= 1 << i;
+            }
+        }
+        add(GUESS, attempts_left, (long) variant.encode(input.toCharArray()) << 32 | (long) lower << 16 | feedback, 1);
+    }
+
+    /**
+     * Records a bought letter.
+     *
+     * @param attempts_left the attempts left after buying.
+     * @param pos           the position of the letter.
+     * @param letter        the letter.
+     */
+    void bought(long attempts_left, int pos, char letter) {
+        add(BUY, attempts_left, (long) pos << 16 | letter, 1);
+    }
+
+    /**
+     * Records that the AI took over the game.
+     *
+     * @param strategy the strategy of the AI.
+     */
+    void aiActivated(SolverStrategy strategy) {
+        add(AI, 0, strategyIndex(strategy), 1);
+    }
+
+    /**
+     * Records that the AI ran out of time and played its best guess so far.
+     *
+     * @param time_limit the time limit in milliseconds.
+     */
+    void aiTimedOut(long time_limit) {
+        add(AI_TIMEOUT, time_limit, 0, 1);
+    }
+
+    /**
+     * Records a bought guess.
+     *
+     * @param strategy   the strategy that found the guess.
+     * @param complete   whether the search finished in time.
+     * @param time_limit the time limit of the search in milliseconds.
+     * @param guess      the packed guess.
+     */
+    void guessBought(SolverStrategy strategy, boolean complete, long time_limit, int guess) {
+        add(BUY_AI, complete ? -1 : time_limit, (long) strategyIndex(strategy) << 32 | guess, 1);
+    }
+
+    /**
+     * Records that the remaining solutions were counted.
+     *
+     * @param count the number of remaining solutions.
+     */
+    void remains(int count) {
+        add(REMAINS, count, 0, 1);
+    }
+
+    /**
+     * Adds text, which may span several lines.
+     *
+     * @param text the text, every line ending with a line feed.
+     */
+    void text(String text) {
+        if (text.isEmpty()) {
+            return;
+        }
+        if (texts == null) {
+            texts = new ArrayList<>();
+        }
+        int count = (int) text.chars().filter(c -> c == '\n').count();
+        if (add(TEXT, texts.size(), 0, count)) {
+            texts.add(text);
+        }
+    }
+
+    /**
+     * Adds an event unless the history is full, growing the arrays if needed.
+     *
+     * @param type  the type of the event.
+     * @param a     the first number of the event.
+     * @param b     the second number of the event.
+     * @param count the number of lines of the event.
+     * @return whether the event was kept.
+     */
+    private boolean add(byte type, long a, long b, int count) {
+        if (size == MAX_EVENTS) {
+            dropped++;
+            return false;
+        }
+        if (size == types.length) {
+            types = Arrays.copyOf(types, size * 2);
+            values = Arrays.copyOf(values, size * 4);
+        }
+        types[size] = type;
+        values[2 * size] = a;
+        values[2 * size + 1] = b;
+        size++;
+        lines += count;
+        return true;
+    }
+
+    /**
+     * Returns the number of events kept.
+     *
+     * @return the number of events.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of lines the history is rendered as.
+     *
+     * @return the number of lines.
+     */
+    int lines() {
+        return lines + (dropped > 0 ? 1 : 0);
+    }
+
+    /**
+     * Renders the history.
+     *
+     * @param line_end what ends every line.
+     * @return the text of the history.
+     */
+    String render(String line_end) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            long a = values[2 * i];
+            long b = values[2 * i + 1];
+            switch (types[i]) {
+                case TEXT -> {
+                    sb.append(texts.get((int) a).replace("\n", line_end));
+                    continue;
+                }
+                case STARTED -> sb.append("Game started at ").append(new Date(a));
+                case EVIL -> sb.append("The evil code maker is playing.");
+                case GUESS -> {
+                    char[] guess = variant.decode((int) (b >>> 32));
+                    for (int j = 0; j < guess.length; j++) {
+                        if ((b >>> 16 & 1 << j) != 0) {
+                            guess[j] = Character.toLowerCase(guess[j]);
+                        }
+                    }
+                    int feedback = (int) (b & 0xFFFF);
+                    sb.append(a).append("> ").append(guess).append(' ')
+                            .append("X".repeat(variant.exact(feedback))).append("-".repeat(variant.partial(feedback)));
+                }
+                case BUY -> {
+                    char[] letters = "_".repeat(variant.pegs).toCharArray();
+                    letters[(int) (b >>> 16)] = (char) (b & 0xFFFF);
+                    sb.append(a).append("> The User bought ").append(Arrays.toString(letters)).append(" using up 5 attempts");
+                }
+                case AI -> sb.append("Player activated AI (").append(strategyName((int) b)).append(").");
+                case AI_TIMEOUT -> sb.append("AI ran out of time after ").append(a).append(" ms and played its best guess so far.");
+                case BUY_AI -> sb.append("User generated a optimal guess (").append(strategyName((int) (b >>> 32)))
+                        .append(a < 0 ? "" : ", cut off after " + a + " ms").append("): ")
+                        .append(variant.decode((int) b)).append(", using up 5 attempts");
+                case REMAINS -> sb.append("Game counted ").append(a)
+                        .append(" possible solutions still available based on guess feedback. 2 attempts were used up");
+                default -> sb.append("Unknown event");
+            }
+            sb.append(line_end);
+        }
+        if (dropped > 0) {
+            sb.append(dropped).append(" more events were not kept.").append(line_end);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Renders the history with a line feed after every line.
+     *
+     * @return the text of the history.
+     */
+    @Override
+    public String toString() {
+        return render("\n");
+    }
+
+    /**
+     * Writes the number of events not kept and the events starting from a given one.
+     *
+     * @param out   the stream to write to.
+     * @param first the index of the first event to write.
+     * @throws IOException if an error occurs during writing.
+     */
+    void write(DataOutputStream out, int first) throws IOException {
+        out.writeInt(dropped);
+        out.writeInt(size - first);
+        for (int i = first; i < size; i++) {
+            long a = values[2 * i];
+            long b = values[2 * i + 1];
+            out.writeByte(types[i]);
+            switch (types[i]) {
+                case TEXT -> GameSerializer.writeText(out, texts.get((int) a));
+                case STARTED, AI_TIMEOUT -> out.writeLong(a);
+                case GUESS, BUY_AI -> {
+                    out.writeLong(a);
+                    out.writeLong(b);
+                }
+                case BUY -> {
+                    out.writeLong(a);
+                    out.writeInt((int) b);
+                }
+                case AI -> out.writeByte((int) b);
+                case REMAINS -> out.writeInt((int) a);
+                default -> {
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads what {@link #write(DataOutputStream, int)} wrote, adding the events to the ones the history has.
+     *
+     * @param in the stream to read from.
+     * @throws IOException if an error occurs during reading or an event is invalid.
+     */
+    void read(DataInputStream in) throws IOException {
+        int dropped = in.readInt();
+        for (int i = in.readInt(); i > 0; i--) {
+            byte type = in.readByte();
+            switch (type) {
+                case TEXT -> text(GameSerializer.readText(in));
+                case STARTED, AI_TIMEOUT -> add(type, in.readLong(), 0, 1);
+                case GUESS, BUY_AI -> add(type, in.readLong(), in.readLong(), 1);
+                case BUY -> add(type, in.readLong(), in.readInt(), 1);
+                case AI -> add(type, 0, in.readUnsignedByte(), 1);
+                case REMAINS -> add(type, in.readInt(), 0, 1);
+                case EVIL -> add(type, 0, 0, 1);
+                default -> throw new IOException("unknown history event " + type);
+            }
+        }
+        this.dropped = dropped;
+    }
+
+    /**
+     * Returns the index of a strategy, which the events store instead of its name.
+     *
+     * @param strategy the strategy.
+     * @return the index of the strategy in {@link AVandiniEliaBzGuessGame#strategies}.
+     */
+    private static int strategyIndex(SolverStrategy strategy) {
+        SolverStrategy[] strategies = AVandiniEliaBzGuessGame.strategies;
+        for (int i = 0; i < strategies.length; i++) {
+            if (strategies[i] == strategy) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the name of a strategy stored in an event.
+     *
+     * @param index the index of the strategy.
+     * @return the name of the strategy.
+     */
+    private static String strategyName(int index) {
+        SolverStrategy[] strategies = AVandiniEliaBzGuessGame.strategies;
+        return index < strategies.length ? strategies[index].getName() : "unknown";
+    }
+}
+
+/**
+ * Statistics of the player, updated as games finish and saved with the game state, so showing them reads no game.
+ * AI games are only counted. Scores of won games go to a Fenwick tree over buckets of {@link #SCORE_STEP},
+ * the step all scores are multiples of, which answers percentiles and ranks in logarithmic time without sorting.
+ */
+class PlayerStats {
+    static final int MAX_GUESSES = 20; // Games won with more guesses share the last bar of the histogram.
+    static final int SCORE_STEP = 10; // Every score is a multiple of this.
+    static final long MAX_SCORE = 38_000; // The highest possible score, see Game.score_calc(long, long).
+
+    long games = 0; // The games the player finished.
+    long won = 0; // The games the player won.
+    long ai_games = 0; // The games the AI finished.
+    long ai_won = 0; // The games the AI won.
+    final long[] guesses = new long[MAX_GUESSES + 2]; // The games the player won by the number of guesses, 0 unused.
+    private final long[] score_tree = new long[(int) (MAX_SCORE / SCORE_STEP) + 2]; // Fenwick tree of the scores, indexed from 1.
+    long scores = 0; // The number of scores in the tree.
+    long think_ms = 0; // The time from the prompt to the guess, over every guess of the player.
+    long think_guesses = 0; // The guesses the player made, the ones think_ms was measured for.
+    long buys = 0; // Uses of .buy.
+    long ai_buys = 0; // Uses of .bai.
+    long remains = 0; // Uses of .remains.
+    long changes = 0; // Counts the updates, to notice a change.
+    final Leaderboard top = new Leaderboard(); // The best games.
+
+    /**
+     * Adds a finished game.
+     *
+     * @param game the game.
+     */
+    void record(Game game) {
+        changes++;
+        if (game.ai) {
+            ai_games++;
+            ai_won += game.won ? 1 : 0;
+            return;
+        }
+        games++;
+        if (game.won) {
+            won++;
+            guesses[max(1, min(game.guesses.size(), MAX_GUESSES + 1))]++;
+            addScore(game.score, 1);
+            top.add(new Leaderboard.Entry(game.score, game.guesses.size(), game.start_date.getTime(), game.variant));
+        }
+    }
+
+    /**
+     * Adds the time the player took for a guess.
+     *
+     * @param ms the time from the prompt to the guess in milliseconds.
+     */
+    void think(long ms) {
+        changes++;
+        think_ms += ms;
+        think_guesses++;
+    }
+
+    /**
+     * Counts a use of .buy.
+     */
+    void buy() {
+        changes++;
+        buys++;
+    }
+
+    /**
+     * Counts a use of .bai.
+     */
+    void buyAI() {
+        changes++;
+        ai_buys++;
+    }
+
+    /**
+     * Counts a use of .remains.
+     */
+    void remains() {
+        changes++;
+        remains++;
+    }
+
+    /**
+     * Adds a score to the tree.
+     *
+     * @param score the score.
+     * @param count how many times to add it.
+     */
+    private void addScore(long score, long count) {
+        scores += count;
+        for (int i = bucket(score) + 1; i < score_tree.length; i += i & -i) {
+            score_tree[i] += count;
+        }
+    }
+
+    /**
+     * Returns the bucket of a score.
+     *
+     * @param score the score.
+     * @return the index of its bucket, from 0.
+     */
+    private static int bucket(long score) {
+        return (int) (max(0, min(score, MAX_SCORE)) / SCORE_STEP);
+    }
+
+    /**
+     * Counts the scores up to a given one.
+     *
+     * @param score the score.
+     * @return the number of scores not higher than the score.
+     */
+    long countUpTo(long score) {
+        long res = 0;
+        for (int i = bucket(score) + 1; i > 0; i -= i & -i) {
+            res += score_tree[i];
+        }
+        return res;
+    }
+
+    /**
+     * Returns the share of the other scores that are lower than one of the scores, without sorting any.
+     *
+     * @param score a score in the tree.
+     * @return the percentage of the other scores that are lower, 100 if there are no others.
+     */
+    double beaten(long score) {
+        long lower = score < SCORE_STEP ? 0 : countUpTo(score - SCORE_STEP);
+        return scores <= 1 ? 100 : 100.0 * lower / (scores - 1);
+    }
+
+    /**
+     * Returns a percentile of the scores.
+     *
+     * @param percent the percentile, between 0 and 100.
+     * @return the lowest score that at least that share of the scores doesn't exceed, -1 if there are no scores.
+     */
+    long percentile(double percent) {
+        if (scores == 0) {
+            return -1;
+        }
+        long rank = max(1, (long) ceil(percent / 100 * scores)); // the rank of the score looked for
+        int pos = 0;
+        for (int step = Integer.highestOneBit(score_tree.length - 1); step > 0; step >>= 1) {
+            if (pos + step < score_tree.length && score_tree[pos + step] < rank) {
+                pos += step;
+                rank -= score_tree[pos];
+            }
+        }
+        return (long) pos * SCORE_STEP; // pos + 1 is the bucket in the tree, pos the bucket from 0
+    }
+
+    /**
+     * Describes the statistics for the .stats command.
+     *
+     * @param highscore the highscore.
+     * @return the lines of the description.
+     */
+    ArrayList<String> describe(long highscore) {
+        ArrayList<String> lines = new ArrayList<>();
+        lines.add("Games: " + games + ", won " + won + ", lost " + (games - won)
+                + (games == 0 ? "" : String.format(", win rate %.1f%%", 100.0 * won / games)));
+        lines.add("AI games: " + ai_games + ", won " + ai_won);
+        if (won > 0) {
+            long most = Arrays.stream(guesses).max().orElse(1);
+            lines.add("Guesses to win:");
+            for (int i = 1; i < guesses.length; i++) {
+                if (guesses[i] > 0) {
+                    lines.add(String.format("%3s %s %d", i > MAX_GUESSES ? MAX_GUESSES + "+" : i,
+                            "#".repeat((int) max(1, guesses[i] * 30 / most)), guesses[i]));
+                }
+            }
+            lines.add("Scores: 25% " + percentile(25) + ", median " + percentile(50) + ", 75% " + percentile(75)
+                    + ", 90% " + percentile(90) + ", highscore " + highscore);
+        }
+        if (think_guesses > 0) {
+            lines.add(String.format("Average time per guess: %.1f s", think_ms / 1000.0 / think_guesses));
+        }
+        lines.add("Store: .buy used " + buys + " times, .bai " + ai_buys + " times, .remains " + remains + " times");
+        return lines;
+    }
+
+    /**
+     * Writes the statistics, the scores as pairs of bucket gap and count, and the leaderboard.
+     *
+     * @param out the stream to write to.
+     * @throws IOException if an error occurs during writing.
+     */
+    void write(DataOutputStream out) throws IOException {
+        for (long value : new long[]{games, won, ai_games, ai_won, think_ms, think_guesses, buys, ai_buys, remains}) {
+            out.writeLong(value);
+        }
+        out.writeByte(guesses.length);
+        for (long count : guesses) {
+            out.writeLong(count);
+        }
+        long[] counts = new long[score_tree.length - 1];
+        int used = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = countUpTo((long) i * SCORE_STEP) - (i == 0 ? 0 : countUpTo((long) (i - 1) * SCORE_STEP));
+            used += counts[i] > 0 ? 1 : 0;
+        }
+        out.writeInt(used);
+        int last = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                out.writeShort(i - last);
+                out.writeInt((int) counts[i]);
+                last = i;
+            }
+        }
+        top.write(out);
+    }
+
+    /**
+     * Reads what {@link #write(DataOutputStream)} wrote into empty statistics.
+     *
+     * @param in          the stream to read from.
+     * @param leaderboard whether the leaderboard follows, which it does since version 5 of the save format.
+     * @throws IOException if an error occurs during reading or the data is invalid.
+     */
+    void read(DataInputStream in, boolean leaderboard) throws IOException {
+        games = in.readLong();
+        won = in.readLong();
+        ai_games = in.readLong();
+        ai_won = in.readLong();
+        think_ms = in.readLong();
+        think_guesses = in.readLong();
+        buys = in.readLong();
+        ai_buys = in.readLong();
+        remains = in.readLong();
+        int length = in.readUnsignedByte();
+        for (int i = 0; i < length; i++) {
+            long count = in.readLong();
+            guesses[min(i, guesses.length - 1)] += count;
+        }
+        int bucket = 0;
+        for (int i = in.readInt(); i > 0; i--) {
+            bucket += in.readUnsignedShort();
+            if (bucket >= score_tree.length - 1) {
+                throw new IOException("invalid score");
+            }
+            addScore((long) bucket * SCORE_STEP, in.readInt());
+        }
+        if (leaderboard) {
+            top.read(in);
+        }
+    }
+}
+
+/**
+ * The best games of the player: the highest scores and the wins with the fewest guesses.
+ * Each list is a heap bounded to {@link #SIZE} games with the worst one on top,
+ * so adding a game costs O(log SIZE) and only sorting the few kept games is needed to show them.
+ */
+class Leaderboard {
+    static final int SIZE = 10; // The number of games each list keeps.
+
+    /**
+     * A game on the leaderboard.
+     *
+     * @param score   the score.
+     * @param guesses the number of guesses.
+     * @param start   when the game started, in milliseconds.
+     * @param variant the variant.
+     */
+    record Entry(long score, int guesses, long start, Variant variant) {
+    }
+
+    static final Comparator<Entry> BY_SCORE = Comparator.comparingLong(Entry::score)
+            .thenComparing(Comparator.comparingLong(Entry::start).reversed()); // Worst first: lower score, then later.
+    static final Comparator<Entry> BY_GUESSES = Comparator.comparingInt(Entry::guesses).reversed()
+            .thenComparing(BY_SCORE); // Worst first: more guesses, then worse score.
+
+    private final PriorityQueue<Entry> by_score = new PriorityQueue<>(BY_SCORE); // The highest scores, the lowest of them on top.
+    private final PriorityQueue<Entry> by_guesses = new PriorityQueue<>(BY_GUESSES); // The fewest guesses, the most of them on top.
+
+    /**
+     * Adds a won game to both lists, dropping the games that no longer make it.
+     *
+     * @param entry the game.
+     */
+    void add(Entry entry) {
+        offer(by_score, entry);
+        offer(by_guesses, entry);
+    }
+
+    /**
+     * Returns whether a won game would make it into the list of the highest scores.
+     *
+     * @param score the score of the game.
+     * @param start when the game started, in milliseconds.
+     * @return true if the game would be added.
+     */
+    boolean makesScores(long score, long start) {
+        return by_score.size() < SIZE || BY_SCORE.compare(new Entry(score, 0, start, null), by_score.peek()) > 0;
+    }
+
+    /**
+     * Adds a won game to the list of the highest scores only.
+     *
+     * @param entry the game.
+     */
+    void addScore(Entry entry) {
+        offer(by_score, entry);
+    }
+
+    /**
+     * Adds a game to a bounded heap.
+     *
+     * @param heap  the heap.
+     * @param entry the game.
+     */
+    private static void offer(PriorityQueue<Entry> heap, Entry entry) {
+        if (heap.size() < SIZE) {
+            heap.add(entry);
+        } else if (heap.comparator().compare(entry, heap.peek()) > 0) {
+            heap.poll();
+            heap.add(entry);
+        }
+    }
+
+    /**
+     * Returns the games with the highest scores.
+     *
+     * @return the games, best first.
+     */
+    List<Entry> byScore() {
+        return sorted(by_score);
+    }
+
+    /**
+     * Returns the games won with the fewest guesses.
+     *
+     * @return the games, best first.
+     */
+    List<Entry> byGuesses() {
+        return sorted(by_guesses);
+    }
+
+    /**
+     * Sorts the games of a heap.
+     *
+     * @param heap the heap.
+     * @return the games, best first.
+     */
+    private static List<Entry> sorted(PriorityQueue<Entry> heap) {
+        ArrayList<Entry> res = new ArrayList<>(heap);
+        res.sort(heap.comparator().reversed());
+        return res;
+    }
+
+    /**
+     * Writes both lists.
+     *
+     * @param out the stream to write to.
+     * @throws IOException if an error occurs during writing.
+     */
+    void write(DataOutputStream out) throws IOException {
+        for (PriorityQueue<Entry> heap : List.of(by_score, by_guesses)) {
+            out.writeByte(heap.size());
+            for (Entry entry : heap) {
+                out.writeLong(entry.score());
+                out.writeInt(entry.guesses());
+                out.writeLong(entry.start());
+                out.writeByte(entry.variant().colors);
+                out.writeByte(entry.variant().pegs);
+            }
+        }
+    }
+
+    /**
+     * Reads what {@link #write(DataOutputStream)} wrote into an empty leaderboard.
+     *
+     * @param in the stream to read from.
+     * @throws IOException if an error occurs during reading or the data is invalid.
+     */
+    void read(DataInputStream in) throws IOException {
+        for (PriorityQueue<Entry> heap : List.of(by_score, by_guesses)) {
+            for (int i = in.readUnsignedByte(); i > 0; i--) {
+                long score = in.readLong();
+                int guesses = in.readInt();
+                long start = in.readLong();
+                try {
+                    offer(heap, new Entry(score, guesses, start, new Variant(in.readUnsignedByte(), in.readUnsignedByte())));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("invalid variant");
+                }
+            }
+        }
+    }
+}
+
+/**
+ * Represents a solver for the game, implementing logic to minimize
+ * the number of guesses needed to identify a secret code.
+ */
+class Solver {
+
+    /**
+     * The variant of the game the solver works on.
+     */
+    final Variant variant;
+
+    /**
+     * Set of all codes that are still possible, addressed by their packed value (see {@link Variant#encode(char[])}).
+     * A new solver shares {@link CodeUniverse#all} and only copies it once codes get removed, see {@link #writableCodes()}.
+     */
+    CandidateSet possibleCodes;
+
+    /**
+     * Number of guesses whose feedback has already been applied to {@link #possibleCodes}.
+     */
+    int applied_guesses = 0;
+
+    /**
+     * Whether codes were removed for other reasons than the feedback of guesses, e.g. by buying a letter.
+     * The opening book only knows about guesses, so it can't be used anymore once this is set.
+     */
+    boolean external_constraints = false;
+
+    /**
+     * Whether the solver works in the background, see {@link Speculator}.
+     * Background solvers score guesses on their own thread only, leaving the other threads to the game,
+     * and leave writing the opening book to the game.
+     */
+    boolean background = false;
+
+    /**
+     * Asked by background searches between guesses, they give up once it says so. Null if nothing stops the solver.
+     */
+    BooleanSupplier stop = null;
+
+    /**
+     * Number of worker threads used to evaluate guesses. 1 disables the parallel evaluation.
+     */
+    static int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Number of guesses a worker takes at once in the parallel evaluation.
+     */
+    private static final int SEARCH_BATCH = 16;
+
+    /**
+     * Maximum number of feedbacks evaluated to pick a guess.
+     * When trying every code as a guess would go past it, only the possible codes are tried,
+     * and if that is still too much an evenly spread selection of them.
+     */
+    static long evaluation_budget = 25_000_000L;
+
+    /**
+     * Time in milliseconds the AI may think about a guess when it is asked in game, 0 for no limit.
+     * Once it is up the best guess found so far is used.
+     */
+    static long time_limit = 5000;
+
+    /**
+     * Pool running the parallel evaluation, see {@link #getPool()}.
+     */
+    private static ForkJoinPool pool;
+
+    /**
+     * Constructor for the Solver class. Initializes the possible codes.
+     *
+     * @param variant The variant of the game to solve.
+     */
+    Solver(Variant variant) {
+        this.variant = variant;
+        possibleCodes = CodeUniverse.of(variant).all;
+    }
+
+    /**
+     * Returns the set of possible codes for changing it, replacing the shared set of every code by a copy first.
+     *
+     * @return The solver's own set of possible codes.
+     */
+    private CandidateSet writableCodes() {
+        if (possibleCodes == CodeUniverse.of(variant).all) {
+            possibleCodes = possibleCodes.copy();
+        }
+        return possibleCodes;
+    }
+
+    /**
+     * Reduces the set of possible codes based on match results and guesses.
+     * Only the guesses made since the last call are applied, the remaining codes already agree with the older ones.
+     *
+     * @param matches The list of match results.
+     * @param guesses The list of guesses corresponding to the matches.
+     * @return The size of the remaining possible codes.
+     * @throws InvalidInputException If the size of matches and guesses differ.
+     */
+    int reduceCodes(ArrayList<Point> matches, ArrayList<char[]> guesses) throws InvalidInputException {
+        if (matches.size() != guesses.size()) {
+            throw new InvalidInputException("param size mismatch");
+        }
+//        populateCodes();
+        FeedbackTable table = FeedbackTable.of(variant);
+        for (; applied_guesses < guesses.size(); applied_guesses++) {
+            int guess = variant.encode(guesses.get(applied_guesses));
+            int feedback = variant.pack(matches.get(applied_guesses));
+            CandidateSet codes = writableCodes();
+            for (int code = codes.nextSetBit(0); code >= 0; code = codes.nextSetBit(code + 1)) {
+                if (table.feedback(guess, code) != feedback) {
+                    codes.remove(code);
+                }
+            }
+        }
+        return possibleCodes.size();
+    }
+
+    /**
+     * Creates a background copy of the solver that can be used while this one keeps changing.
+     *
+     * @return The copy.
+     */
+    Solver fork() {
+        Solver res = new Solver(variant);
+        res.possibleCodes = possibleCodes.copy();
+        res.applied_guesses = applied_guesses;
+        res.external_constraints = external_constraints;
+        res.background = true;
+        res.stop = stop;
+        return res;
+    }
+
+    /**
+     * Removes every code that doesn't have a certain character at a certain position.
+     *
+     * @param pos The position of the character, 0 being the leftmost one.
+     * @param c   The character.
+     */
+    void revealPosition(int pos, char c) {
+        writableCodes().and(FeedbackTable.of(variant).positionMask(pos, c));
+        external_constraints = true;
+    }
+
+    /**
+     * Determines the best guess using the minimax strategy.
+     * This code is based on <a href="https://en.wikipedia.org/wiki/Mastermind_(board_game)#Worst_case:_Five-guess_algorithm">Donald Knuth's algorithm for codebreaking mastermind</a>
+     *
+     * @param matches The list of match results.
+     * @param guesses The list of previous guesses.
+     * @return The best guess as a character array.
+     * @throws InvalidInputException If the size of matches and guesses differ.
+     */
+    char[] minimaxBestGuess(ArrayList<Point> matches, ArrayList<char[]> guesses) throws InvalidInputException {
+        return bestGuess(AVandiniEliaBzGuessGame.strategies[0], matches, guesses);
+    }
+
+    /**
+     * Determines the best guess according to a strategy, taking as long as it takes.
+     *
+     * @param strategy The strategy scoring the guesses.
+     * @param matches  The list of match results.
+     * @param guesses  The list of previous guesses.
+     * @return The best guess as a character array.
+     * @throws InvalidInputException If the size of matches and guesses differ.
+     * @see #search(SolverStrategy, ArrayList, ArrayList, long)
+     */
+    char[] bestGuess(SolverStrategy strategy, ArrayList<Point> matches, ArrayList<char[]> guesses) throws InvalidInputException {
+        return search(strategy, matches, guesses, 0).guess();
+    }
+
+    /**
+     * Searches the best guess according to a strategy, giving up after a time limit.
+     * Every guess splits the possible codes into groups by the feedback they would give,
+     * the strategy scores these groups and the guess with the lowest score wins.
+     * The possible codes are scored first since they might win the game right away and usually
+     * score well, then the other codes of the pool. Once the time is up the best guess scored so far is returned.
+     *
+     * @param strategy   The strategy scoring the guesses.
+     * @param matches    The list of match results.
+     * @param guesses    The list of previous guesses.
+     * @param time_limit The time the search may take in milliseconds, 0 for no limit.
+     * @return The best guess found and whether every candidate guess was scored.
+     * @throws InvalidInputException If the size of matches and guesses differ.
+     */
+    SearchResult search(SolverStrategy strategy, ArrayList<Point> matches, ArrayList<char[]> guesses, long time_limit) throws InvalidInputException {
+        long deadline = System.nanoTime() + time_limit * 1_000_000L;
+//        System.out.println("\r" + possibleCodes.size());
+        if (matches.size() != guesses.size()) {
+            throw new InvalidInputException("param size mismatch");
+        }
+        if (strategy instanceof OptimalStrategy && !external_constraints) {
+            int guess = OptimalTree.lookup(variant, matches, guesses);
+            if (guess >= 0) {
+                return new SearchResult(variant.decode(guess), true);
+            }
+        }
+        // scoring the first guess of a big variant takes ages, so every strategy but minimax only skips it when it has to
+        if (matches.isEmpty() && possibleCodes.size() == variant.code_count
+                && (strategy instanceof MinimaxStrategy || (long) variant.code_count * variant.code_count > evaluation_budget)) {
+            return new SearchResult(variant.opening(), true);
+        }
+        reduceCodes(matches, guesses);
+        if (possibleCodes.size() == 1) {
+            return new SearchResult(variant.decode(possibleCodes.nextSetBit(0)), true);
+        }
+        boolean bookable = OpeningBook.enabled && !external_constraints && matches.size() <= OpeningBook.MAX_DEPTH;
+        if (bookable) {
+            int guess = OpeningBook.lookup(variant, strategy, matches, guesses);
+            if (guess >= 0) {
+                return new SearchResult(variant.decode(guess), true);
+            }
+        }
+        int cached = SolverCache.enabled ? SolverCache.lookup(variant, strategy, possibleCodes) : -1;
+        if (cached >= 0) {
+            if (bookable && !background) {
+                OpeningBook.store(variant, strategy, matches, guesses, cached); // found by the Speculator, which doesn't write the book
+            }
+            return new SearchResult(variant.decode(cached), true);
+        }
+        FeedbackTable table = FeedbackTable.of(variant);
+        int[] codes = possibleCodes.toArray();
+        int[] pool = guessPool(codes, guesses);
+        int[] order = new int[pool.length]; // indices into pool, possible codes first
+        int ordered = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < pool.length; i++) {
+                if (possibleCodes.contains(pool[i]) == (pass == 0)) {
+                    order[ordered++] = i;
+                }
+            }
+        }
+        double[] scores = new double[pool.length];
+        Arrays.fill(scores, Double.NaN); // not scored
+        AtomicBoolean cut_off = new AtomicBoolean(false);
+        if (threads > 1 && !background) {
+            // the workers take small batches off a shared cursor, so guesses are scored in order even if the deadline hits;
+            // every index is handed out once, so no synchronisation is needed for the scores
+            AtomicInteger cursor = new AtomicInteger();
+            try {
+                getPool().submit(() -> IntStream.range(0, threads).parallel().forEach(worker -> {
+                    int[] counter = new int[variant.feedback_count];
+                    for (int start = cursor.getAndAdd(SEARCH_BATCH); start < pool.length; start = cursor.getAndAdd(SEARCH_BATCH)) {
+                        int end = min(start + SEARCH_BATCH, pool.length);
+                        for (int i = start; i < end; i++) {
+                            if (i > 0 && time_limit > 0 && System.nanoTime() - deadline > 0) {
+                                cut_off.set(true);
+                                return;
+                            }
+                            partition(table, pool[order[i]], codes, counter);
+                            scores[order[i]] = strategy.score(counter, codes.length);
+                        }
+                    }
+                })).get();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new RuntimeException(e);
+            }
+        } else {
+            int[] counter = new int[variant.feedback_count];
+            for (int i = 0; i < pool.length; i++) {
+                if (i > 0 && time_limit > 0 && System.nanoTime() - deadline > 0 || stop != null && stop.getAsBoolean()) {
+                    cut_off.set(true);
+                    break;
+                }
+                partition(table, pool[order[i]], codes, counter);
+                scores[order[i]] = strategy.score(counter, codes.length);
+            }
+        }
+        // picking the first lowest score in code order keeps the result independent of the thread count and the search order
+        double lowest_score = Double.POSITIVE_INFINITY;
+        int lowest_score_code = variant.encode(variant.opening());
+        for (int i = 0; i < pool.length; i++) {
+//            if (guesses.contains(guess)) {
+//                continue;
+//            }
+            if (scores[i] < lowest_score) {
+                lowest_score_code = pool[i];
+                lowest_score = scores[i];
+            }
+        }
+//        System.out.println("\r" + possibleCodes.size());
+        if (cut_off.get()) {
+            return new SearchResult(variant.decode(lowest_score_code), false);
+        }
+        if (bookable && !background) {
+            OpeningBook.store(variant, strategy, matches, guesses, lowest_score_code);
+        }
+        if (SolverCache.enabled) {
+            SolverCache.store(variant, strategy, possibleCodes, lowest_score_code);
+        }
+        return new SearchResult(variant.decode(lowest_score_code), true);
+    }
+
+    /**
+     * Chooses the codes that are tried as the next guess, keeping the work within {@link #evaluation_budget}.
+     * Every code of the variant is tried whenever possible, which is always the case for the classic game.
+     * Codes that are the same guess as an earlier one up to swapping colors and positions are left out,
+     * see {@link #symmetryRepresentatives(int[], ArrayList)}.
+     *
+     * @param codes   The packed codes that are still possible.
+     * @param guesses The list of previous guesses, all applied to the possible codes.
+     * @return The packed codes to try, in ascending order.
+     */
+    int[] guessPool(int[] codes, ArrayList<char[]> guesses) {
+        if ((long) variant.code_count * codes.length <= evaluation_budget) {
+            return symmetryRepresentatives(CodeUniverse.of(variant).codes, guesses);
+        }
+        if ((long) codes.length * codes.length <= evaluation_budget) {
+            return symmetryRepresentatives(codes, guesses);
+        }
+        int[] res = new int[(int) max(1, evaluation_budget / codes.length)];
+        for (int i = 0; i < res.length; i++) {
+            res[i] = codes[(int) ((long) i * codes.length / res.length)];
+        }
+        return res;
+    }
+
+    /**
+     * Keeps one code of every group of codes that only differ by swapping colors and positions.
+     * Colors that weren't used by any guess can be swapped freely, and so can two positions that hold
+     * the same color in every guess. Neither changes the past guesses, so the possible codes are only
+     * shuffled among themselves and every code of a group splits them the same way and gets the same score.
+     * Only the first code of each group is kept, which is the one the solver would have picked from the group
+     * anyway, so the result doesn't change. The pool has to be closed under these swaps, which holds for
+     * every code and for the possible codes unless a letter was bought.
+     *
+     * @param pool    The packed codes to try, in ascending order.
+     * @param guesses The list of previous guesses, all applied to the possible codes.
+     * @return The codes of the pool that come first in their group, in ascending order.
+     */
+    int[] symmetryRepresentatives(int[] pool, ArrayList<char[]> guesses) {
+        if (external_constraints) {
+            return pool;
+        }
+        int pegs = variant.pegs;
+        int colors = variant.colors;
+        char[][] played = guesses.toArray(new char[0][]);
+        boolean[] used = new boolean[colors];
+        for (char[] guess : played) {
+            for (char c : guess) {
+                used[Variant.digitOf(c)] = true;
+            }
+        }
+        // every position is mapped to the first position it can be swapped with
+        int[] position_class = new int[pegs];
+        int[] leaders = new int[pegs];
+        int class_count = 0;
+        for (int p = 0; p < pegs; p++) {
+            position_class[p] = p;
+            for (int q = 0; q < p && position_class[p] == p; q++) {
+                boolean same = position_class[q] == q;
+                for (int i = 0; i < played.length && same; i++) {
+                    same = Variant.digitOf(played[i][p]) == Variant.digitOf(played[i][q]);
+                }
+                if (same) {
+                    position_class[p] = q;
+                }
+            }
+            if (position_class[p] == p) {
+                leaders[class_count++] = p;
+            }
+        }
+        int[] free = new int[colors];
+        int free_count = 0;
+        for (int c = 0; c < colors; c++) {
+            if (!used[c]) {
+                free[free_count++] = c;
+            }
+        }
+        if (free_count <= 1 && class_count == pegs) {
+            return pool;
+        }
+
+        // two codes are in the same group exactly when they map to the same canonical code: the free colors
+        // are renamed by how they are spread over the classes of positions, then every class is sorted
+        CandidateSet seen = new CandidateSet(variant.code_count);
+        int[][] counts = new int[pegs][colors];
+        int[] order = new int[free_count];
+        int[] label = new int[colors];
+        int[] res = new int[pool.length];
+        int res_count = 0;
+        for (int code : pool) {
+            for (int[] row : counts) {
+                Arrays.fill(row, 0);
+            }
+            for (int p = pegs - 1, rest = code; p >= 0; p--, rest /= colors) {
+                counts[position_class[p]][rest % colors]++;
+            }
+            for (int c = 0; c < colors; c++) {
+                label[c] = c;
+            }
+            for (int i = 0; i < free_count; i++) {
+                int color = free[i];
+                int j = i;
+                for (; j > 0 && compareSpread(counts, leaders, class_count, order[j - 1], color) < 0; j--) {
+                    order[j] = order[j - 1];
+                }
+                order[j] = color;
+            }
+            for (int i = 0; i < free_count; i++) {
+                label[order[i]] = free[i];
+            }
+            int canonical = 0;
+            for (int p = 0; p < pegs; p++) {
+                // the n-th position of a class gets the n-th smallest renamed color of the class
+                int rank = 0;
+                for (int q = position_class[p]; q < p; q++) {
+                    if (position_class[q] == position_class[p]) {
+                        rank++;
+                    }
+                }
+                int digit = 0;
+                for (int[] row = counts[position_class[p]]; ; digit++) {
+                    int color = 0;
+                    while (label[color] != digit) {
+                        color++;
+                    }
+                    rank -= row[color];
+                    if (rank < 0) {
+                        break;
+                    }
+                }
+                canonical = canonical * colors + digit;
+            }
+            if (!seen.contains(canonical)) {
+                seen.add(canonical);
+                res[res_count++] = code;
+            }
+        }
+        return Arrays.copyOf(res, res_count);
+    }
+
+    /**
+     * Compares how two colors are spread over the classes of interchangeable positions.
+     *
+     * @param counts      The number of times each color appears in each class, indexed by the first position of the class.
+     * @param leaders     The first position of every class, in ascending order.
+     * @param class_count The number of classes.
+     * @param a           The first color.
+     * @param b           The second color.
+     * @return A negative number if a appears less often in the first class where they differ, 0 if they are spread the same way.
+     */
+    private static int compareSpread(int[][] counts, int[] leaders, int class_count, int a, int b) {
+        for (int i = 0; i < class_count; i++) {
+            int diff = counts[leaders[i]][a] - counts[leaders[i]][b];
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Counts how many of the possible codes would receive each feedback for a guess.
+     * This is the kernel shared by every {@link SolverStrategy}.
+     *
+     * @param table   The feedback table of the variant.
+     * @param guess   The packed guess to evaluate.
+     * @param codes   The packed codes that are still possible.
+     * @param counter Array of {@link Variant#feedback_count} elements, overwritten with the number of codes per packed feedback.
+     */
+    static void partition(FeedbackTable table, int guess, int[] codes, int[] counter) {
+        Arrays.fill(counter, 0);
+        for (int code : codes) {
+            counter[table.feedback(guess, code)]++;
+        }
+    }
+
+    /**
+     * Counts how many codes of a set would receive each feedback for a guess, like {@link #partition(FeedbackTable, int, int[], int[])}.
+     *
+     * @param table   The feedback table of the variant.
+     * @param guess   The packed guess to evaluate.
+     * @param codes   The set of codes.
+     * @param counter Array of {@link Variant#feedback_count} elements, overwritten with the number of codes per packed feedback.
+     */
+    static void partition(FeedbackTable table, int guess, CandidateSet codes, int[] counter) {
+        Arrays.fill(counter, 0);
+        for (int code = codes.nextSetBit(0); code >= 0; code = codes.nextSetBit(code + 1)) {
+            counter[table.feedback(guess, code)]++;
+        }
+    }
+
+    /**
+     * Returns the pool used for the parallel evaluation of guesses,
+     * creating a new one whenever the number of threads was changed.
+     *
+     * @return The solver's ForkJoinPool.
+     */
+    static synchronized ForkJoinPool getPool() {
+        if (pool == null || pool.getParallelism() != threads) {
+            if (pool != null) {
+                pool.shutdown();
+            }
+            pool = new ForkJoinPool(threads);
+        }
+        return pool;
+    }
+}
+
+/**
+ * Lets the solver play games against known secret codes without any user interaction, for checking changes to the solver.
+ * Every code of the variant is played unless a number of games is given, in which case random codes are drawn.
+ * The games are spread over {@link Solver#threads} workers, each solver running single threaded, and the report
+ * covers the throughput, the number of guesses the games took and how long the solver needed per move.
+ */
+class Simulation {
+
+    /**
+     * Number of guesses after which a game counts as failed, so a broken solver can't hang the simulation.
+     */
+    static final int MAX_GUESSES = 64;
+
+    /**
+     * Games to play when the variant has too many codes to play them all and no number was given.
+     */
+    static final int DEFAULT_RANDOM_GAMES = 1000;
+
+    /**
+     * Explains the arguments of the simulation.
+     */
+    static final String USAGE = "usage: --simulate [games] [--variant <colors> <length>] [--strategy <name>] [--threads <n>] [--seed <n>]";
+
+    /**
+     * Entry point of the simulation, prints the report or the reason the arguments were rejected.
+     *
+     * @param args the arguments following {@code --simulate}.
+     */
+    static void main(String[] args) {
+        try {
+            run(args);
+        } catch (InvalidInputException | IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Parses the arguments, plays the games and prints the report.
+     *
+     * @param args the arguments following {@code --simulate}.
+     * @throws InvalidInputException if an argument is invalid.
+     */
+    static void run(String[] args) throws InvalidInputException {
+        Variant variant = Variant.CLASSIC;
+        SolverStrategy strategy = AVandiniEliaBzGuessGame.strategies[0];
+        int workers = Solver.threads;
+        int games = -1;
+        long seed = System.nanoTime();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--variant" -> variant = new Variant(parseInt(args, ++i), parseInt(args, ++i));
+                case "--strategy" -> strategy = AVandiniEliaBzGuessGame.getStrategy(new String[]{value(args, ++i)});
+                case "--threads" -> workers = parseInt(args, ++i);
+                case "--seed" -> {
+                    try {
+                        seed = Long.parseLong(value(args, ++i));
+                    } catch (NumberFormatException e) {
+                        throw new InvalidInputException("Invalid seed: " + args[i]);
+                    }
+                }
+                default -> games = parseInt(args, i);
+            }
+        }
+        if (workers < 1 || games == 0 || games < -1) {
+            throw new InvalidInputException("The number of games and threads must be positive");
+        }
+        int[] secrets;
+        if (games == -1 && variant.code_count <= FeedbackTable.MAX_TABLE_CODES) {
+            secrets = CodeUniverse.of(variant).codes;
+        } else {
+            Random random = new Random(seed);
+            secrets = new int[games == -1 ? DEFAULT_RANDOM_GAMES : games];
+            for (int i = 0; i < secrets.length; i++) {
+                secrets[i] = random.nextInt(variant.code_count);
+            }
+        }
+        simulate(variant, strategy, secrets, workers);
+    }
+
+    /**
+     * Returns the value of an option.
+     *
+     * @param args  the arguments.
+     * @param index the index of the value.
+     * @return the value.
+     * @throws InvalidInputException if the value is missing.
+     */
+    static String value(String[] args, int index) throws InvalidInputException {
+        if (index >= args.length) {
+            throw new InvalidInputException("Missing argument after " + args[index - 1]);
+        }
+        return args[index];
+    }
+
+    /**
+     * Parses a number argument.
+     *
+     * @param args  the arguments.
+     * @param index the index of the number.
+     * @return the number.
+     * @throws InvalidInputException if the argument is missing or not a number.
+     */
+    static int parseInt(String[] args, int index) throws InvalidInputException {
+        String arg = value(args, index);
+        try {
+            return Integer.parseInt(arg);
+        } catch (NumberFormatException e) {
+            throw new InvalidInputException("Invalid argument: " + arg);
+        }
+    }
+
+    /**
+     * Plays a game for every secret code and prints the report.
+     *
+     * @param variant  the variant of the games.
+     * @param strategy the strategy of the solver.
+     * @param secrets  the packed secret codes.
+     * @param workers  the number of games played at the same time.
+     */
+    static void simulate(Variant variant, SolverStrategy strategy, int[] secrets, int workers) {
+        int solver_threads = Solver.threads;
+        boolean book = OpeningBook.enabled;
+        boolean cache = SolverCache.enabled;
+        Solver.threads = 1; // the games are already parallel
+        OpeningBook.enabled = false;
+        SolverCache.enabled = false;
+        int[] guess_counts = new int[secrets.length];
+        long[][] latencies = new long[secrets.length][];
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        try {
+            pool.submit(() -> IntStream.range(0, secrets.length).parallel().forEach(i -> {
+                long[] times = new long[MAX_GUESSES];
+                guess_counts[i] = play(variant, strategy, secrets[i], times);
+                latencies[i] = Arrays.copyOf(times, min(guess_counts[i], MAX_GUESSES));
+            })).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        } finally {
+            pool.shutdown();
+            Solver.threads = solver_threads;
+            OpeningBook.enabled = book;
+            SolverCache.enabled = cache;
+        }
+        long elapsed = System.nanoTime() - start;
+
+        int max_guesses = 0;
+        long total_guesses = 0;
+        int failed = 0;
+        int[] distribution = new int[MAX_GUESSES + 1];
+        for (int count : guess_counts) {
+            if (count > MAX_GUESSES) {
+                failed++;
+                continue;
+            }
+            distribution[count]++;
+            total_guesses += count;
+            max_guesses = max(max_guesses, count);
+        }
+        long[] moves = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+
+        System.out.printf("%d games of %s with %s on %d threads in %.2f s (%.1f games/s)%n", secrets.length, variant,
+                strategy.getName(), workers, elapsed / 1e9, secrets.length / (elapsed / 1e9));
+        System.out.printf("guesses: average %.4f, max %d%s%n", (double) total_guesses / max(1, secrets.length - failed),
+                max_guesses, failed > 0 ? ", " + failed + " games not solved within " + MAX_GUESSES : "");
+        for (int count = 1; count <= max_guesses; count++) {
+            System.out.printf("%4d: %7d  %5.1f%%%n", count, distribution[count], distribution[count] * 100.0 / secrets.length);
+        }
+        System.out.printf("move latency: p50 %s, p90 %s, p99 %s, max %s (%d moves)%n", percentile(moves, 50),
+                percentile(moves, 90), percentile(moves, 99), percentile(moves, 100), moves.length);
+    }
+
+    /**
+     * Lets the solver play a game against a secret code.
+     *
+     * @param variant  the variant of the game.
+     * @param strategy the strategy of the solver.
+     * @param secret   the packed secret code.
+     * @param times    array of {@link #MAX_GUESSES} elements, receives the time the solver took for each guess in nanoseconds.
+     * @return the number of guesses it took, or {@link #MAX_GUESSES} + 1 if the code wasn't found.
+     */
+    static int play(Variant variant, SolverStrategy strategy, int secret, long[] times) {
+        Solver solver = new Solver(variant);
+        ArrayList<Point> matches = new ArrayList<>();
+        ArrayList<char[]> guesses = new ArrayList<>();
+        try {
+            for (int move = 0; move < MAX_GUESSES; move++) {
+                long start = System.nanoTime();
+                char[] guess = solver.bestGuess(strategy, matches, guesses);
+                times[move] = System.nanoTime() - start;
+                int feedback = variant.feedback(secret, variant.encode(guess));
+                if (variant.exact(feedback) >= variant.pegs) {
+                    return move + 1;
+                }
+                matches.add(variant.toPoint(feedback));
+                guesses.add(guess);
+            }
+        } catch (InvalidInputException e) {
+            throw new IllegalStateException(e);
+        }
+        return MAX_GUESSES + 1;
+    }
+
+    /**
+     * Formats a percentile of sorted durations.
+     *
+     * @param sorted the durations in nanoseconds, in ascending order.
+     * @param p      the percentile, 100 being the maximum.
+     * @return the readable duration.
+     */
+    static String percentile(long[] sorted, int p) {
+        if (sorted.length == 0) {
+            return "-";
+        }
+        long nanos = sorted[max(0, (int) ceil(sorted.length * p / 100.0) - 1)];
+        return nanos >= 1_000_000 ? String.format("%.2f ms", nanos / 1e6) : String.format("%.1f us", nanos / 1e3);
+    }
+}
+
+/**
+ * Answers game states read from the standard input, so the solver can be used by scripts and other programs.
+ * Every line holds the guesses of a game with their feedback, like {@code AABB:XX-;CCDD:X} (an empty line is a
+ * game without guesses), and is answered by a line with the number of codes that are still possible and the
+ * solver's next guess, like {@code 12 ABCC}, or {@code 0 -} if no code fits the feedback. Invalid lines are
+ * answered with {@code ERROR} and the reason.
+ * Lines are read in batches of whatever is available, solved in parallel and answered in order.
+ */
+class SolveService {
+
+    /**
+     * Biggest number of lines solved together.
+     */
+    static int batch_size = 1024;
+
+    /**
+     * Explains the arguments of the service.
+     */
+    static final String USAGE = "usage: --solve [--variant <colors> <length>] [--strategy <name>] [--threads <n>]";
+
+    /**
+     * Entry point of the service, runs until the end of the standard input.
+     *
+     * @param args the arguments following {@code --solve}.
+     */
+    static void main(String[] args) {
+        try {
+            Variant variant = Variant.CLASSIC;
+            SolverStrategy strategy = AVandiniEliaBzGuessGame.strategies[0];
+            int workers = Solver.threads;
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--variant" -> variant = new Variant(Simulation.parseInt(args, ++i), Simulation.parseInt(args, ++i));
+                    case "--strategy" -> strategy = AVandiniEliaBzGuessGame.getStrategy(new String[]{Simulation.value(args, ++i)});
+                    case "--threads" -> workers = Simulation.parseInt(args, ++i);
+                    default -> throw new InvalidInputException("Unknown argument: " + args[i]);
+                }
+            }
+            if (workers < 1) {
+                throw new InvalidInputException("The number of threads must be positive");
+            }
+            serve(variant, strategy, workers, new BufferedReader(new InputStreamReader(System.in)), System.out);
+        } catch (InvalidInputException | IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        } catch (IOException e) {
+            System.err.println("unable to read the input (" + e.getMessage() + ")");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Answers every line of the input.
+     *
+     * @param variant  the variant of the games.
+     * @param strategy the strategy of the solver.
+     * @param workers  the number of lines solved at the same time.
+     * @param in       the input, one game per line.
+     * @param out      receives the answers.
+     * @throws IOException if an error occurs during reading.
+     */
+    static void serve(Variant variant, SolverStrategy strategy, int workers, BufferedReader in, PrintStream out) throws IOException {
+        int solver_threads = Solver.threads;
+        boolean book = OpeningBook.enabled;
+        Solver.threads = 1; // the lines are already parallel
+        OpeningBook.enabled = false;
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(out)));
+        try {
+            ArrayList<String> lines = new ArrayList<>();
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                // waiting only for the first line of a batch keeps the service responsive when used interactively
+                lines.add(line);
+                while (lines.size() < batch_size && in.ready() && (line = in.readLine()) != null) {
+                    lines.add(line);
+                }
+                String[] answers = new String[lines.size()];
+                pool.submit(() -> IntStream.range(0, answers.length).parallel()
+                        .forEach(i -> answers[i] = answer(variant, strategy, lines.get(i)))).get();
+                for (String answer : answers) {
+                    writer.println(answer);
+                }
+                writer.flush();
+                lines.clear();
+                if (line == null) {
+                    break;
+                }
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        } finally {
+            writer.flush();
+            pool.shutdown();
+            Solver.threads = solver_threads;
+            OpeningBook.enabled = book;
+        }
+    }
+
+    /**
+     * Solves a single line.
+     *
+     * @param variant  the variant of the game.
+     * @param strategy the strategy of the solver.
+     * @param line     the guesses and their feedback.
+     * @return the answer line.
+     */
+    static String answer(Variant variant, SolverStrategy strategy, String line) {
+        ArrayList<Point> matches = new ArrayList<>();
+        ArrayList<char[]> guesses = new ArrayList<>();
+        try {
+            parse(variant, line, matches, guesses);
+            Solver solver = new Solver(variant);
+            int remaining = solver.reduceCodes(matches, guesses);
+            if (remaining == 0) {
+                return "0 -";
+            }
+            return remaining + " " + new String(solver.bestGuess(strategy, matches, guesses));
+        } catch (InvalidInputException e) {
+            return "ERROR " + e.getMessage();
+        }
+    }
+
+    /**
+     * Parses a line like {@code AABB:XX-;CCDD:X} into guesses and their feedback.
+     *
+     * @param variant the variant of the game.
+     * @param line    the line.
+     * @param matches receives the feedback of every guess.
+     * @param guesses receives the guesses in upper case.
+     * @throws InvalidInputException if the line is not a valid game of the variant.
+     */
+    static void parse(Variant variant, String line, ArrayList<Point> matches, ArrayList<char[]> guesses) throws InvalidInputException {
+        line = line.strip();
+        if (line.isEmpty()) {
+            return;
+        }
+        for (String turn : line.split(";")) {
+            String[] parts = turn.strip().split(":", -1);
+            if (parts.length != 2) {
+                throw new InvalidInputException("Expected <guess>:<feedback> but got '" + turn + "'");
+            }
+            String guess = parts[0].strip().toUpperCase();
+            if (guess.length() != variant.pegs || !variant.isValidCode(guess)) {
+                throw new InvalidInputException("Invalid guess '" + parts[0] + "', expected " + variant.pegs + " letters out of " + variant.describeOptions());
+            }
+            int exact = 0;
+            int partial = 0;
+            for (char c : parts[1].strip().toCharArray()) {
+                switch (c) {
+                    case 'X', 'x' -> exact++;
+                    case '-' -> partial++;
+                    default -> throw new InvalidInputException("Invalid feedback '" + parts[1] + "', expected X and -");
+                }
+            }
+            if (exact > variant.pegs || partial >= 1 << variant.partial_bits) {
+                throw new InvalidInputException("Impossible feedback '" + parts[1] + "'");
+            }
+            guesses.add(guess.toCharArray());
+            matches.add(new Point(exact, partial));
+        }
+    }
+}
+
+/**
+ * Computes the strategy needing the fewest guesses on average, started with {@code --optimal}.
+ * The cost of a set of possible codes is the total number of guesses needed to find each of them, which is
+ * the size of the set (every code needs the next guess) plus the cost of every group the guess splits the set into,
+ * except the group of the guess itself which is solved. It is found with a depth first branch and bound search:
+ * <ul>
+ *     <li>the guesses of a set are tried in the order of a lower bound of their cost and the search stops at the first
+ *     one whose bound can't beat the best guess so far, or once a guess reaches the lower bound of the set,</li>
+ *     <li>every group is searched with the budget left by the groups before it and the bounds of the ones after it,
+ *     and fails as soon as it can't stay within it,</li>
+ *     <li>exact costs and the lower bounds learned from failed searches are memoized per set, and</li>
+ *     <li>only one guess per group of color and position swaps is tried, see {@link Solver#symmetryRepresentatives(int[], ArrayList)}.</li>
+ * </ul>
+ * The groups of the first guess are searched in parallel. The memo is written to a checkpoint file every minute and
+ * read back when the search is started again, so an interrupted search resumes where it stopped.
+ * The result is written as an {@link OptimalTree} that the {@code optimal} strategy follows.
+ */
+class OptimalSearch {
+
+    /**
+     * Marks the start of a checkpoint file, followed by the version of the format.
+     */
+    private static final int MAGIC = 0x4F505443; // "OPTC"
+    private static final int VERSION = 1;
+
+    /**
+     * Time between two checkpoints in milliseconds.
+     */
+    static final long CHECKPOINT_INTERVAL = 60_000;
+
+    /**
+     * Explains the arguments of the search.
+     */
+    static final String USAGE = "usage: --optimal [--variant <colors> <length>] [--threads <n>]";
+
+    final Variant variant;
+    final FeedbackTable table;
+    final int win; // The packed feedback of a solved code.
+
+    /**
+     * Smallest possible cost of a set, indexed by its size, see {@link #lowerBounds()}.
+     */
+    final int[] lower_bounds;
+
+    /**
+     * Solver only used for its symmetry reduction.
+     */
+    private final Solver symmetry;
+
+    /**
+     * Memoized results per set: the cost in the upper 32 bits and the best guess in the lower ones,
+     * or -1 as guess if the cost is only a lower bound.
+     */
+    final ConcurrentHashMap<CandidateSet, Long> memo = new ConcurrentHashMap<>();
+
+    /**
+     * Prepares a search.
+     *
+     * @param variant the variant to solve.
+     */
+    OptimalSearch(Variant variant) {
+        this.variant = variant;
+        table = FeedbackTable.of(variant);
+        win = variant.pegs << variant.partial_bits;
+        symmetry = new Solver(variant);
+        lower_bounds = lowerBounds();
+    }
+
+    /**
+     * Entry point of the search, prints the progress and the result.
      *
-     * @param args the arguments passed with the command.
-     * @throws InvalidInputException if the input is invalid for the command.
+     * @param args the arguments following {@code --optimal}.
      */
-    void exec(String[] args) throws InvalidInputException {
+    static void main(String[] args) {
+        try {
+            Variant variant = AVandiniEliaBzGuessGame.variant;
+            int workers = Solver.threads;
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--variant" -> variant = new Variant(Simulation.parseInt(args, ++i), Simulation.parseInt(args, ++i));
+                    case "--threads" -> workers = Simulation.parseInt(args, ++i);
+                    default -> throw new InvalidInputException("Unknown argument: " + args[i]);
+                }
+            }
+            if (workers < 1) {
+                throw new InvalidInputException("The number of threads must be positive");
+            }
+            new OptimalSearch(variant).run(workers);
+        } catch (InvalidInputException | IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        } catch (IOException e) {
+            System.err.println("unable to write the result (" + e.getMessage() + ")");
+            System.exit(1);
+        }
     }
-}
 
-/**
- * Command to display help information for all available commands.
- * Lists commands grouped by their categories and provides descriptions.
- */
-class CommandHelp extends Command {
+    /**
+     * Name of the checkpoint file of a variant.
+     *
+     * @param variant the variant.
+     * @return the path of the file.
+     */
+    static String checkpointPath(Variant variant) {
+        return "Optimal-" + variant + ".checkpoint";
+    }
 
     /**
-     * Constructs a CommandHelp with predefined attributes.
+     * Runs the whole search, writing checkpoints along the way and the tree at the end.
+     *
+     * @param workers the number of threads searching.
+     * @throws IOException if the tree can't be written.
      */
-    CommandHelp() {
-        super();
-        category = CommandCategory.BASIC;
-        longc = "help";
-        shortc = "h";
-        description = "Display a help screen explaining the game commands";
-        fullName = "Help";
+    void run(int workers) throws IOException {
+        File checkpoint = new File(checkpointPath(variant));
+        if (checkpoint.exists()) {
+            try {
+                loadCheckpoint(checkpoint);
+                System.out.println("resuming from " + checkpoint + " (" + memo.size() + " positions)");
+            } catch (IOException e) {
+                System.out.println("ignoring " + checkpoint + " (" + e.getMessage() + ")");
+            }
+        }
+        Timer timer = new Timer("Checkpoint", true);
+        timer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                writeCheckpoint(checkpoint);
+            }
+        }, CHECKPOINT_INTERVAL, CHECKPOINT_INTERVAL);
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        int cost;
+        try {
+            cost = pool.submit(() -> solveRoot(CodeUniverse.of(variant).codes)).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        } finally {
+            timer.cancel();
+            pool.shutdown();
+        }
+        writeCheckpoint(checkpoint);
+        OptimalTree tree = OptimalTree.build(this);
+        tree.save(OptimalTree.path(variant));
+        System.out.printf("%s: %d guesses for %d codes, %.4f on average, %d positions, %.1f s%n", variant, cost,
+                variant.code_count, (double) cost / variant.code_count, memo.size(), (System.nanoTime() - start) / 1e9);
+        System.out.println("written to " + OptimalTree.path(variant));
     }
 
     /**
-     * Executes the help command by displaying available commands and their descriptions.
+     * Computes the lower bounds of the costs. No guess splits a set into more than a certain number of groups,
+     * so at best one code is solved by the first guess, as many as there are groups by the second one and so on.
      *
-     * @param args the arguments passed with the command (e.g., to show secret commands).
+     * @return the lower bound for every set size up to the number of codes.
+     */
+    private int[] lowerBounds() {
+        int groups = 1;
+        int[] counter = new int[variant.feedback_count];
+        for (int guess = 0; guess < variant.code_count; guess++) {
+            Solver.partition(table, guess, CodeUniverse.of(variant).codes, counter);
+            int parts = 0;
+            for (int f = 0; f < counter.length; f++) {
+                if (counter[f] > 0 && f != win) {
+                    parts++;
+                }
+            }
+            groups = max(groups, parts);
+        }
+        int[] res = new int[variant.code_count + 1];
+        long level = 1; // codes that can be solved with the current number of guesses
+        int depth = 1;
+        for (int n = 1, left = 1; n <= variant.code_count; n++, left--) {
+            if (left == 0) {
+                level = min(level * groups, Integer.MAX_VALUE);
+                left = (int) level;
+                depth++;
+            }
+            res[n] = res[n - 1] + depth;
+        }
+        return res;
+    }
+
+    /**
+     * Builds the memo key of a set of codes.
+     *
+     * @param codes the packed codes.
+     * @return the set holding them.
      */
-    void exec(String[] args) {
-        boolean show_secret = false;
-        if (args.length > 0 && args[0].equals("-s")) {
-            show_secret = true;
+    CandidateSet key(int[] codes) {
+        CandidateSet res = new CandidateSet(variant.code_count);
+        for (int code : codes) {
+            res.add(code);
         }
-        String space_storage = "                  ";
+        return res;
+    }
 
-        for (CommandCategory c : CommandCategory.values()) {
-            if (c == CommandCategory.SECRET && !show_secret) {
+    /**
+     * Splits codes into the groups a guess would put them in, leaving out the solved code.
+     *
+     * @param guess the packed guess.
+     * @param codes the packed codes, in ascending order.
+     * @return the groups in ascending order of feedback, each in ascending order.
+     */
+    int[][] split(int guess, int[] codes) {
+        int[] counter = new int[variant.feedback_count];
+        Solver.partition(table, guess, codes, counter);
+        int[][] groups = new int[variant.feedback_count][];
+        int count = 0;
+        for (int f = 0; f < counter.length; f++) {
+            if (counter[f] > 0 && f != win) {
+                groups[f] = new int[counter[f]];
+                count++;
+            }
+        }
+        Arrays.fill(counter, 0);
+        for (int code : codes) {
+            int f = table.feedback(guess, code);
+            if (f != win) {
+                groups[f][counter[f]++] = code;
+            }
+        }
+        int[][] res = new int[count][];
+        for (int f = 0, i = 0; f < groups.length; f++) {
+            if (groups[f] != null) {
+                res[i++] = groups[f];
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Searches the first guess, solving the groups of every guess in parallel.
+     *
+     * @param codes every code of the variant.
+     * @return the cost of the variant.
+     */
+    int solveRoot(int[] codes) {
+        Long known = memo.get(key(codes));
+        if (known != null && (int) known.longValue() >= 0) {
+            return (int) (known >>> 32);
+        }
+        int best = Integer.MAX_VALUE;
+        int best_guess = -1;
+        for (int guess : symmetry.symmetryRepresentatives(codes, new ArrayList<>())) {
+            int[][] groups = split(guess, codes);
+            if (groups.length == 1 && groups[0].length == codes.length) {
                 continue;
             }
-            AVandiniEliaBzGuessGame.setAttribute(TextAttributes.BRIGHT);
-            System.out.println("\n\r" + c.toString().toUpperCase());
-            AVandiniEliaBzGuessGame.resetAttrributes();
-            for (Command command : AVandiniEliaBzGuessGame.comands) {
-                if (c != command.category) {
-                    continue;
+            long bounds = 0;
+            for (int[] group : groups) {
+                bounds += lower_bounds[group.length];
+            }
+            if (codes.length + bounds >= best) {
+                continue;
+            }
+            int budget = best;
+            long bound_sum = bounds;
+            ArrayList<char[]> history = new ArrayList<>();
+            history.add(variant.decode(guess));
+            long total = codes.length + Arrays.stream(groups).parallel().mapToLong(group -> solve(group, new ArrayList<>(history),
+                    (int) min(Integer.MAX_VALUE, budget - codes.length - bound_sum + lower_bounds[group.length]))).sum();
+            System.out.printf("first guess %s: %s%n", new String(variant.decode(guess)), total < best ? total : "no improvement");
+            if (total < best) {
+                best = (int) total;
+                best_guess = guess;
+            }
+        }
+        memo.put(key(codes), (long) best << 32 | (best_guess & 0xFFFFFFFFL));
+        return best;
+    }
+
+    /**
+     * Finds the cost of a set of codes if it is below a budget.
+     *
+     * @param codes   the packed codes, in ascending order.
+     * @param history the guesses leading to the set, used for the symmetry reduction and restored before returning.
+     * @param budget  the cost to beat.
+     * @return the exact cost if it is below the budget, otherwise a lower bound of at least the budget.
+     */
+    int solve(int[] codes, ArrayList<char[]> history, int budget) {
+        int n = codes.length;
+        if (n <= 2) {
+            return lower_bounds[n]; // guessing one of the codes is always optimal
+        }
+        int lower = lower_bounds[n];
+        if (lower >= budget) {
+            return lower;
+        }
+        CandidateSet key = key(codes);
+        Long known = memo.get(key);
+        if (known != null) {
+            int cost = (int) (known >>> 32);
+            if ((int) known.longValue() >= 0 || cost >= budget) {
+                return cost;
+            }
+            lower = max(lower, cost);
+        }
+
+        // orders the guesses by their lower bound, possible codes first on ties
+        int[] pool = symmetry.symmetryRepresentatives(CodeUniverse.of(variant).codes, history);
+        long[] order = new long[pool.length];
+        int count = 0;
+        int[] counter = new int[variant.feedback_count];
+        for (int i = 0; i < pool.length; i++) {
+            Solver.partition(table, pool[i], codes, counter);
+            long bound = n;
+            boolean useless = false;
+            for (int f = 0; f < counter.length; f++) {
+                if (counter[f] > 0 && f != win) {
+                    bound += lower_bounds[counter[f]];
+                    useless |= counter[f] == n;
                 }
-                String help_string = "\r." + command.shortc + " | ." + command.longc;
-                help_string = help_string + space_storage.substring(help_string.length()) + command.description;
-                System.out.println(help_string);
+            }
+            if (!useless) {
+                order[count++] = bound << 32 | (counter[win] > 0 ? 0 : 1L << 30) | i;
             }
         }
-        System.out.println();
-        System.out.println("\rSoftware by " + AVandiniEliaBzGuessGame.Author + ". Version " + AVandiniEliaBzGuessGame.Version);
+        Arrays.sort(order, 0, count);
+
+        int best = budget;
+        int best_guess = -1;
+        for (int k = 0; k < count && (order[k] >>> 32) < best; k++) {
+            int guess = pool[(int) (order[k] & 0xFFFFFF)];
+            int[][] groups = split(guess, codes);
+            // the biggest groups fail the most often, so they go first
+            Arrays.sort(groups, (a, b) -> b.length - a.length);
+            int rest = (int) (order[k] >>> 32) - n;
+            int total = n;
+            history.add(variant.decode(guess));
+            for (int[] group : groups) {
+                rest -= lower_bounds[group.length];
+                total += solve(group, history, best - total - rest);
+                if (total + rest >= best) {
+                    break;
+                }
+            }
+            history.removeLast();
+            if (total + rest < best) {
+                best = total;
+                best_guess = guess;
+                if (best <= lower) {
+                    break;
+                }
+            }
+        }
+        memo.put(key, (long) best << 32 | (best_guess & 0xFFFFFFFFL));
+        return best;
     }
-}
 
-/**
- * Command to display help information for all available Keybinds.
- * Lists Keybinds and provides descriptions.
- */
-class CommandKeybinds extends Command {
+    /**
+     * Returns the best guess for a set of codes, searching it again if the memo doesn't know it.
+     *
+     * @param codes   the packed codes, in ascending order.
+     * @param history the guesses leading to the set.
+     * @return the packed guess.
+     */
+    int bestGuess(int[] codes, ArrayList<char[]> history) {
+        if (codes.length <= 2) {
+            return codes[0];
+        }
+        Long known = memo.get(key(codes));
+        if (known == null || (int) known.longValue() < 0) {
+            if (history.isEmpty()) {
+                solveRoot(codes);
+            } else {
+                solve(codes, history, Integer.MAX_VALUE);
+            }
+            known = memo.get(key(codes));
+        }
+        return (int) known.longValue();
+    }
 
     /**
-     * Constructs a CommandKeybinds with predefined attributes.
+     * Writes the memo to the checkpoint file, going through a temporary file so a crash never leaves a broken checkpoint.
+     * Failures only print a warning since the search can go on without checkpoints.
+     *
+     * @param file the checkpoint file.
      */
-    CommandKeybinds() {
-        super();
-        category = CommandCategory.BASIC;
-        longc = "keys";
-        shortc = "k";
-        description = "Display a help screen explaining the game keybinds";
-        fullName = "Keybinds";
+    void writeCheckpoint(File file) {
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(variant.colors);
+                out.writeInt(variant.pegs);
+                for (Map.Entry<CandidateSet, Long> entry : memo.entrySet()) {
+                    int[] codes = entry.getKey().toArray();
+                    out.writeInt(codes.length);
+                    for (int code : codes) {
+                        out.writeInt(code);
+                    }
+                    out.writeLong(entry.getValue());
+                }
+                out.writeInt(0);
+            }
+            GameSerializer.replaceFile(tmp, file);
+        } catch (IOException e) {
+            System.out.println("WARNING: unable to write checkpoint (" + e.getMessage() + ")");
+        }
     }
 
     /**
-     * Executes the help command by displaying available keybinds and their descriptions.
+     * Reads a checkpoint file into the memo.
      *
-     * @param args the arguments passed with the command (not used for this command).
+     * @param file the checkpoint file.
+     * @throws IOException if the file can't be read or belongs to another variant.
      */
-    void exec(String[] args) {
-        String space_storage = "         ";
-        AVandiniEliaBzGuessGame.set8bitForeground(241);
-        System.out.println();
-        System.out.println("\r ^X stands for the ctrl modifyer (eg. ^C is ctrl+C)");
-        AVandiniEliaBzGuessGame.resetAttrributes();
-        System.out.println();
-        for (KeyBind keyBind : AVandiniEliaBzGuessGame.global_keybinds) {
-            String help_string = "\r    " + keyBind.shortel;
-            help_string = help_string + space_storage.substring(help_string.length()) + keyBind.description;
-            System.out.println(help_string);
+    void loadCheckpoint(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("not a checkpoint of this version");
+            }
+            if (in.readInt() != variant.colors || in.readInt() != variant.pegs) {
+                throw new IOException("checkpoint of another variant");
+            }
+            for (int n = in.readInt(); n > 0; n = in.readInt()) {
+                int[] codes = new int[n];
+                for (int i = 0; i < n; i++) {
+                    codes[i] = in.readInt();
+                }
+                memo.put(key(codes), in.readLong());
+            }
         }
-        System.out.println();
-        AVandiniEliaBzGuessGame.set8bitForeground(241);
-        System.out.println("\rYou can also use the arrow combined with alt and/or shift to move around the input bar."
-                + "\n\rThe up and down arrow keys will let you cycle your input history");
-        AVandiniEliaBzGuessGame.resetAttrributes();
     }
 }
 
 /**
- * Command to display the rules of the game.
- * Provides detailed instructions and guidelines for playing the game.
+ * A strategy tree computed by {@link OptimalSearch}, telling the guess for every position of a game that followed it.
+ * Node 0 is the first guess, and every node links to the node of the next guess for each feedback.
+ * In memory the links are a table with a row per node, so following a feedback is a single lookup.
+ * The file holds the variant and then per node its guess and its links as (feedback, node) pairs.
  */
-class CommandRules extends Command {
+class OptimalTree {
 
     /**
-     * Constructs a CommandRules with predefined attributes.
+     * Marks the start of a tree file, followed by the version of the format.
      */
-    CommandRules() {
-        super();
-        category = CommandCategory.BASIC;
-        longc = "rules";
-        shortc = "r";
-        description = "Display a help screen explaining the game rules";
-        fullName = "Rules";
+    private static final int MAGIC = 0x4F505454; // "OPTT"
+    private static final int VERSION = 1;
+
+    /**
+     * The trees loaded so far, one per variant.
+     */
+    private static final Map<Variant, OptimalTree> trees = new HashMap<>();
+
+    final Variant variant;
+
+    /**
+     * The packed guess of every node.
+     */
+    final int[] guesses;
+
+    /**
+     * The next node for every node and feedback, at {@code node * feedback_count + feedback}, -1 if there is none.
+     */
+    final int[] links;
+
+    /**
+     * Creates a tree from its nodes.
+     *
+     * @param variant the variant of the tree.
+     * @param guesses the packed guess of every node.
+     * @param links   the links of every node, see {@link #links}.
+     */
+    OptimalTree(Variant variant, int[] guesses, int[] links) {
+        this.variant = variant;
+        this.guesses = guesses;
+        this.links = links;
     }
 
     /**
-     * Executes the rules command by displaying the game rules and gameplay instructions.
+     * Name of the tree file of a variant.
      *
-     * @param args the arguments passed with the command (not used for this command).
+     * @param variant the variant.
+     * @return the path of the file.
      */
-    void exec(String[] args) {
-        System.out.println("\r╔═══════════════════════════════════════════════════════════════════════════╗");
-        System.out.println("\r║                             BzGuessGame Help                              ║");
-        System.out.println("\r║                                                                           ║");
-        System.out.println("\r║ Welcome to my BzGuessGame! Your goal is to guess the secret code.         ║");
-        System.out.println("\r║                                                                           ║");
-        System.out.println("\r║ - The secret code consists of 4 characters from {a, b, c, d, e, f}.       ║");
-        System.out.println("\r║ - Characters can appear zero to four times.                               ║");
-        System.out.println("\r║ - You have 20 attempts to guess the code.                                 ║");
-        System.out.println("\r║ - After each guess, you'll receive feedback:                              ║");
-        System.out.println("\r║   X: Correct character at the correct position.                           ║");
-        System.out.println("\r║   -: Correct character but at the wrong position.                         ║");
-        System.out.println("\r║                                                                           ║");
-        System.out.println("\r║ Check out available commands with .help or .h!                            ║");
-        System.out.println("\r║ To execute a command, prefix a '.' before the command.                    ║");
-        System.out.println("\r║ 'HELP' will be interpreted as a guess while '.help' or '.h' is a command. ║");
-        System.out.println("\r║                                                                           ║ ");
-        System.out.println("\r║ Good luck!                                                                ║");
-        System.out.println("\r╚═══════════════════════════════════════════════════════════════════════════╝ ");
+    static String path(Variant variant) {
+        return "Optimal-" + variant + ".tree";
     }
-}
 
-/**
- * Command to reveal the secret code.
- * This is categorized as a secret command and is primarily for debugging or cheating.
- */
-class CommandP extends Command {
+    /**
+     * Builds the tree from a finished search.
+     *
+     * @param search the search.
+     * @return the tree.
+     */
+    static OptimalTree build(OptimalSearch search) {
+        Variant variant = search.variant;
+        ArrayList<Integer> guesses = new ArrayList<>();
+        ArrayList<int[]> links = new ArrayList<>();
+        add(search, CodeUniverse.of(variant).codes, new ArrayList<>(), guesses, links);
+        int[] table = new int[guesses.size() * variant.feedback_count];
+        Arrays.fill(table, -1);
+        for (int[] link : links) {
+            table[link[0] * variant.feedback_count + link[1]] = link[2];
+        }
+        return new OptimalTree(variant, guesses.stream().mapToInt(Integer::intValue).toArray(), table);
+    }
 
     /**
-     * Constructs a CommandP with predefined attributes.
-     */
-    CommandP() {
-        super();
-        category = CommandCategory.SECRET;
-        longc = "p";
-        shortc = "p";
-        description = "Reveals the code";
-        fullName = "Reveal Code";
+     * Adds the node of a set of codes and the nodes below it.
+     *
+     * @param search  the finished search.
+     * @param codes   the packed codes, in ascending order.
+     * @param history the guesses leading to the set.
+     * @param guesses receives the guess of every node.
+     * @param links   receives every link as (node, feedback, next node).
+     * @return the index of the node.
+     */
+    private static int add(OptimalSearch search, int[] codes, ArrayList<char[]> history, ArrayList<Integer> guesses, ArrayList<int[]> links) {
+        int node = guesses.size();
+        int guess = search.bestGuess(codes, history);
+        guesses.add(guess);
+        history.add(search.variant.decode(guess));
+        for (int[] group : search.split(guess, codes)) {
+            int feedback = search.table.feedback(guess, group[0]);
+            links.add(new int[]{node, feedback, add(search, group, history, guesses, links)});
+        }
+        history.removeLast();
+        return node;
     }
 
     /**
-     * Executes the command to print the secret code to the terminal.
+     * Writes the tree to a file.
      *
-     * @param args the arguments passed with the command (not used for this command).
+     * @param filePath the path of the file.
+     * @throws IOException if an error occurs during file writing.
      */
-    void exec(String[] args) {
-        System.out.println("\rCode is " + Arrays.toString(AVandiniEliaBzGuessGame.current_game.code));
+    void save(String filePath) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filePath)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeByte(variant.colors);
+            out.writeByte(variant.pegs);
+            out.writeInt(guesses.length);
+            for (int node = 0; node < guesses.length; node++) {
+                out.writeInt(guesses[node]);
+                int count = 0;
+                for (int f = 0; f < variant.feedback_count; f++) {
+                    count += links[node * variant.feedback_count + f] >= 0 ? 1 : 0;
+                }
+                out.writeShort(count);
+                for (int f = 0; f < variant.feedback_count; f++) {
+                    int next = links[node * variant.feedback_count + f];
+                    if (next >= 0) {
+                        out.writeShort(f);
+                        out.writeInt(next);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a tree from a file.
+     *
+     * @param filePath the path of the file.
+     * @return the tree.
+     * @throws IOException if an error occurs during file reading or the file is not a valid tree.
+     */
+    static OptimalTree load(String filePath) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filePath)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("not a strategy tree of this version");
+            }
+            Variant variant;
+            try {
+                variant = new Variant(in.readByte(), in.readByte());
+            } catch (IllegalArgumentException e) {
+                throw new IOException("invalid variant");
+            }
+            int nodes = in.readInt();
+            int[] guesses = new int[nodes];
+            int[] links = new int[nodes * variant.feedback_count];
+            Arrays.fill(links, -1);
+            for (int node = 0; node < nodes; node++) {
+                guesses[node] = in.readInt();
+                for (int count = in.readShort(); count > 0; count--) {
+                    int f = in.readShort();
+                    int next = in.readInt();
+                    if (f < 0 || f >= variant.feedback_count || next <= node || next >= nodes) {
+                        throw new IOException("corrupted strategy tree");
+                    }
+                    links[node * variant.feedback_count + f] = next;
+                }
+            }
+            return new OptimalTree(variant, guesses, links);
+        }
+    }
+
+    /**
+     * Looks up the tree's guess for a game. The game has to have followed the tree so far.
+     * Trees are loaded from their file the first time they are needed.
+     *
+     * @param variant the variant of the game.
+     * @param matches the feedback of the past guesses.
+     * @param guesses the past guesses.
+     * @return the packed guess or -1 if there is no tree for the variant or the game left it.
+     */
+    static int lookup(Variant variant, ArrayList<Point> matches, ArrayList<char[]> guesses) {
+        OptimalTree tree;
+        synchronized (trees) {
+            tree = trees.get(variant);
+            if (tree == null && new File(path(variant)).exists()) {
+                try {
+                    tree = load(path(variant));
+                    if (!tree.variant.equals(variant)) {
+                        throw new IOException("tree of another variant");
+                    }
+                    trees.put(variant, tree);
+                } catch (IOException e) {
+                    AVandiniEliaBzGuessGame.setAttribute(FColors.YELLOW);
+                    System.out.println("\rWARNING: unable to read strategy tree (" + e.getMessage() + ")");
+                    AVandiniEliaBzGuessGame.resetAttrributes();
+                    return -1;
+                }
+            }
+        }
+        if (tree == null) {
+            return -1;
+        }
+        int node = 0;
+        for (int i = 0; i < guesses.size(); i++) {
+            if (variant.encode(guesses.get(i)) != tree.guesses[node]) {
+                return -1;
+            }
+            node = tree.links[node * variant.feedback_count + variant.pack(matches.get(i))];
+            if (node < 0) {
+                return -1;
+            }
+        }
+        return tree.guesses[node];
     }
 }
 
 /**
- * Command to quit the game.
- * Marks the current game as lost and ends the session.
+ * Micro benchmarks of the game's hot paths, started with {@code --bench [filter]}.
+ * Every case is warmed up and then run in timed iterations, reporting the time and the bytes allocated per operation
+ * so that regressions in either show up. The allocations are read from the JVM's per-thread counters, which is
+ * why everything runs on the calling thread with a single threaded solver.
  */
-class CommandQuit extends Command {
+class Benchmark {
 
     /**
-     * Constructs a CommandQuit with predefined attributes.
+     * Time spent running a case before measuring it, so the JIT compiler is done with it.
      */
-    CommandQuit() {
-        super();
-        category = CommandCategory.BASIC;
-        longc = "quit";
-        shortc = "q";
-        description = "Reveals the code and quits the game";
-        fullName = "Quit";
-    }
+    static final long WARMUP_NANOS = 1_000_000_000L;
 
     /**
-     * Executes the quit command by marking the current game as lost.
-     *
-     * @param args the arguments passed with the command (not used for this command).
+     * Number and length of the measured iterations of a case.
      */
-    void exec(String[] args) {
-        AVandiniEliaBzGuessGame.current_game.lost = true;
-    }
-}
-
-/**
- * Command to close the game.
- * Saves the game state and terminates the application cleanly.
- */
-class CommandClose extends Command {
+    static final int ITERATIONS = 5;
+    static final long ITERATION_NANOS = 400_000_000L;
 
     /**
-     * Constructs a CommandClose with predefined attributes.
+     * Consumes the results of the cases so the JIT compiler can't drop the work producing them.
      */
-    CommandClose() {
-        super();
-        category = CommandCategory.BASIC;
-        longc = "close";
-        shortc = "c";
-        description = "Saves game and quits";
-        fullName = "Close Game";
+    static volatile int sink;
+
+    /**
+     * Builds the cases, runs those whose name contains the filter and prints the results.
+     *
+     * @param args the arguments following {@code --bench}, optionally a filter.
+     */
+    static void main(String[] args) {
+        String filter = args.length > 0 ? args[0] : "";
+        int solver_threads = Solver.threads;
+        boolean book = OpeningBook.enabled;
+        Solver.threads = 1;
+        OpeningBook.enabled = false;
+        try {
+            Map<String, Callable<Object>> cases = cases();
+            System.out.printf("%-32s %14s %14s %14s%n", "benchmark", "ns/op", "(min)", "B/op");
+            for (Map.Entry<String, Callable<Object>> entry : cases.entrySet()) {
+                if (entry.getKey().contains(filter)) {
+                    run(entry.getKey(), entry.getValue());
+                }
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            Solver.threads = solver_threads;
+            OpeningBook.enabled = book;
+        }
     }
 
     /**
-     * Executes the close command by saving the game state and exiting the application.
+     * Builds every benchmark case, preparing the data they work on.
      *
-     * @param args the arguments passed with the command (not used for this command).
+     * @return the cases by name, in the order they are run.
+     * @throws Exception if the data can't be prepared.
      */
-    void exec(String[] args) {
-        KeyListenenThread.running = false;
+    static Map<String, Callable<Object>> cases() throws Exception {
+        Variant variant = Variant.CLASSIC;
+        Map<String, Callable<Object>> cases = new LinkedHashMap<>();
+
+        ArrayList<char[]> codes = new ArrayList<>();
+        for (int code = 0; code < variant.code_count; code++) {
+            codes.add(variant.decode(code));
+        }
+        int[] next = new int[1];
+        cases.put("checkGuess", () -> {
+            int i = next[0]++ & 0xFFFFF;
+            return Game.checkGuess(variant, codes.get(i % variant.code_count), codes.get(i * 7 % variant.code_count));
+        });
+        cases.put("newSolver", () -> new Solver(variant));
+
+        // a game the solver needs five guesses for, so histories of up to four guesses exist
+        ArrayList<Point> matches = new ArrayList<>();
+        ArrayList<char[]> guesses = new ArrayList<>();
+        for (int secret = 0; guesses.size() < 4; secret++) {
+            matches.clear();
+            guesses.clear();
+            Solver solver = new Solver(variant);
+            while (true) {
+                char[] guess = solver.minimaxBestGuess(matches, guesses);
+                Point match = Game.checkGuess(variant, codes.get(secret), guess);
+                if (match.x == variant.pegs) {
+                    break;
+                }
+                matches.add(match);
+                guesses.add(guess);
+            }
+        }
+        for (int depth : new int[]{1, 2, 4}) {
+            ArrayList<Point> m = new ArrayList<>(matches.subList(0, depth));
+            ArrayList<char[]> g = new ArrayList<>(guesses.subList(0, depth));
+            cases.put("reduceCodes/depth=" + depth, () -> new Solver(variant).reduceCodes(m, g));
+        }
+        for (int move : new int[]{1, 2}) {
+            ArrayList<Point> m = new ArrayList<>(matches.subList(0, move - 1));
+            ArrayList<char[]> g = new ArrayList<>(guesses.subList(0, move - 1));
+            cases.put("minimaxBestGuess/move=" + move, () -> {
+                SolverCache.clear();
+                return new Solver(variant).minimaxBestGuess(m, g);
+            });
+        }
+
+        for (int count : new int[]{10, 100, 1_000, 10_000}) {
+            ArrayList<Game> games = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                Game game = new Game();
+                game.history.started(game.start_date.getTime());
+                game.matches = new ArrayList<>(matches);
+                game.guesses = new ArrayList<>(guesses);
+                game.won = true;
+                games.add(game);
+            }
+            GameSerializer state = new GameSerializer(0, games, games.getLast(), CursorStyles.BLINKING_BAR, new ArrayList<>());
+            File file = File.createTempFile("bench", ".ser");
+            file.deleteOnExit();
+            GameSerializer.saveGameState(state, file.getPath());
+            cases.put("saveGameState/games=" + count, () -> {
+                GameSerializer.saveGameState(state, file.getPath());
+                return file;
+            });
+            cases.put("loadGameState/games=" + count, () -> GameSerializer.loadGameState(file.getPath()));
+        }
+
+        TextBox box = new TextBox();
+        box.text.append(".hi");
+        cases.put("fancy_ui_printer", () -> {
+            box.fancy_ui_printer(12, false);
+            return box;
+        });
+        return cases;
+    }
+
+    /**
+     * Warms up and measures a case, then prints its results.
+     * The standard output goes nowhere while the case runs, so printing cases measure their own work and not the terminal.
+     *
+     * @param name the name of the case.
+     * @param op   the operation to measure.
+     * @throws Exception if the operation fails.
+     */
+    static void run(String name, Callable<Object> op) throws Exception {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        PrintStream out = System.out;
+        double best = Double.POSITIVE_INFINITY;
+        long total_ops = 0;
+        long total_nanos = 0;
+        long total_bytes = 0;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
         try {
-            KeyListenenThread.disableRawMode();
-        } catch (Exception ignored) {
+            for (long end = System.nanoTime() + WARMUP_NANOS; System.nanoTime() < end; ) {
+                sink += Objects.hashCode(op.call());
+            }
+            for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+                long ops = 0;
+                long bytes = bean.getCurrentThreadAllocatedBytes();
+                long start = System.nanoTime();
+                long now = start;
+                while (now - start < ITERATION_NANOS) {
+                    sink += Objects.hashCode(op.call());
+                    ops++;
+                    now = System.nanoTime();
+                }
+                total_bytes += bean.getCurrentThreadAllocatedBytes() - bytes;
+                total_nanos += now - start;
+                total_ops += ops;
+                best = min(best, (double) (now - start) / ops);
+            }
+        } finally {
+            System.setOut(out);
         }
-        AVandiniEliaBzGuessGame.saveGameState();
-        System.out.println("\r");
-        AVandiniEliaBzGuessGame.setCursorStyle(CursorStyles.BLINKING_BLOCK);
-        System.exit(0); // not ideal but cleaner than manually exiting the game loop from here
+        System.out.printf("%-32s %14.1f %14.1f %14.1f%n", name, (double) total_nanos / total_ops, best, (double) total_bytes / total_ops);
     }
 }
 
 /**
- * Command to start a new game.
- * Resets the current game and begins a new one.
+ * Thinks ahead while the player is typing.
+ * At the start of every turn the AI's guess for the current position is worked out in the background, and then
+ * the AI's reply to every feedback that guess could get. The answers end up in the {@link SolverCache},
+ * so {@code .bai} and the next step of {@code .ai} are answered right away. Starting a new speculation
+ * makes the running one stop, as it belongs to a position that is gone. Before the AI searches in the foreground
+ * it calls {@link #await(Game, SolverStrategy)}, so a position is never searched twice at the same time
+ * and the speculation never makes the AI take longer than {@link Solver#time_limit}.
  */
-class CommandNew extends Command {
+class Speculator {
 
     /**
-     * Constructs a CommandNew with predefined attributes.
+     * Whether the game speculates at all.
      */
-    CommandNew() {
-        super();
-        category = CommandCategory.INGAME;
-        longc = "new";
-        shortc = "n";
-        description = "Start over a new game";
-        fullName = "New Game";
-    }
+    static boolean enabled = true;
 
     /**
-     * Executes the new game command by marking the current game as lost and starting a new game.
-     *
-     * @param args the arguments passed with the command (not used for this command).
+     * The strategy to speculate with, the one the player used last.
      */
-    void exec(String[] args) {
-        AVandiniEliaBzGuessGame.current_game.lost = true;
-        AVandiniEliaBzGuessGame.newGame();
-    }
-}
+    static SolverStrategy strategy = AVandiniEliaBzGuessGame.strategies[0];
 
-/**
- * Command to set a custom secret code.
- * Allows users to define their own code for the game.
- */
-class CommandSetCode extends Command {
+    /**
+     * Incremented by every speculation, a running speculation stops once it no longer matches.
+     */
+    private static final AtomicInteger generation = new AtomicInteger();
+
+    private static Game speculated; // The game of the latest speculation, null if it was stopped. Only used on the game thread.
+    private static int speculated_guesses; // The number of guesses of the game when the latest speculation started.
+    private static String speculated_reveals; // The revealed letters of the game when the latest speculation started.
+    private static SolverStrategy speculated_strategy; // The strategy of the latest speculation.
+    private static CompletableFuture<Void> first_search = CompletableFuture.completedFuture(null); // Completes once the latest speculation searched its position.
 
     /**
-     * Constructs a CommandSetCode with predefined attributes.
+     * Runs the speculations on a single low priority daemon thread.
      */
-    CommandSetCode() {
-        super();
-        category = CommandCategory.SECRET;
-        longc = "setcode";
-        shortc = "S";
-        description = "Set the secret code to a user input";
-        fullName = "Set Code";
-    }
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "Speculator");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
 
     /**
-     * Executes the set code command, allowing the user to define a new secret code.
-     * Validates the input for length and allowed characters.
+     * Starts thinking about the current position of a game, dropping any older speculation.
      *
-     * @param args the arguments passed with the command, containing the new code.
-     * @throws InvalidInputException if the input is invalid.
+     * @param game the game, only read on the calling thread.
      */
-    void exec(String[] args) throws InvalidInputException {
-        if (args.length > 1) {
-            throw new InvalidInputException("Only one argument expected");
-        }
-        if (args.length < 1) {
-            throw new InvalidInputException("At least one argument expected");
-        }
-        if (args[0].length() != 4) {
-            throw new InvalidInputException("New code may only contain 4 characters");
-        }
-        if (args[0].matches(".*[^ABCDEFabcdef].*")) {
-            throw new InvalidInputException("New code must consist of A, B, C, D, E, or F");
+    static void speculate(Game game) {
+        int id = generation.incrementAndGet();
+        speculated = null;
+        if (!enabled || game.won || game.lost) {
+            return;
         }
-        for (int i = 0; i < args[0].length(); i++) {
-            char ch = args[0].toUpperCase().charAt(i);
-            boolean char_found = false;
-            for (int j = 0; j < AVandiniEliaBzGuessGame.options.length; j++) {
-                if (AVandiniEliaBzGuessGame.options[j] == ch) {
-                    char_found = true;
+        Variant variant = game.variant;
+        SolverStrategy strategy = Speculator.strategy;
+        Solver root = game.solver.fork();
+        root.stop = () -> generation.get() != id;
+        ArrayList<Point> matches = new ArrayList<>(game.matches);
+        ArrayList<char[]> guesses = new ArrayList<>(game.guesses);
+        CompletableFuture<Void> searched = new CompletableFuture<>();
+        speculated = game;
+        speculated_guesses = guesses.size();
+        speculated_reveals = new String(game.discovered_chars);
+        speculated_strategy = strategy;
+        first_search = searched;
+        executor.execute(() -> {
+            if (generation.get() != id) {
+                searched.complete(null);
+                return;
+            }
+            try {
+                SearchResult next;
+                try {
+                    next = root.search(strategy, matches, guesses, Solver.time_limit);
+                } finally {
+                    searched.complete(null);
+                }
+                if (!next.complete() || root.possibleCodes.size() <= 1) {
+                    return;
                 }
+                int guess = variant.encode(next.guess());
+                int[] counter = new int[variant.feedback_count];
+                Solver.partition(FeedbackTable.of(variant), guess, root.possibleCodes.toArray(), counter);
+                for (int feedback = 0; feedback < counter.length; feedback++) {
+                    if (generation.get() != id) {
+                        return;
+                    }
+                    if (counter[feedback] <= 1 || variant.exact(feedback) >= variant.pegs) {
+                        continue;
+                    }
+                    ArrayList<Point> next_matches = new ArrayList<>(matches);
+                    ArrayList<char[]> next_guesses = new ArrayList<>(guesses);
+                    next_matches.add(variant.toPoint(feedback));
+                    next_guesses.add(next.guess());
+                    root.fork().search(strategy, next_matches, next_guesses, Solver.time_limit);
+                }
+            } catch (InvalidInputException e) {
+                throw new IllegalStateException(e);
             }
-            if (!char_found) {
-                throw new InvalidInputException("New code contains invalid characters");
+        });
+    }
+
+    /**
+     * Makes way for the AI to search the current position of a game in the foreground.
+     * If the latest speculation is about that position and strategy, its search is waited for, but no longer than
+     * {@link Solver#time_limit}, and the answer is in the {@link SolverCache} afterwards if it finished.
+     * Any other speculation, or one that didn't finish in time, is stopped, and this returns once it is gone.
+     *
+     * @param game     the game.
+     * @param strategy the strategy the AI is about to search with.
+     * @return the time limit for the foreground search in milliseconds, what is left of {@link Solver#time_limit}.
+     */
+    static long await(Game game, SolverStrategy strategy) {
+        long time_limit = Solver.time_limit;
+        long start = System.nanoTime();
+        try {
+            if (game == speculated && game.guesses.size() == speculated_guesses
+                    && new String(game.discovered_chars).equals(speculated_reveals) && strategy == speculated_strategy) {
+                if (time_limit <= 0) {
+                    first_search.get();
+                    return time_limit;
+                }
+                try {
+                    first_search.get(time_limit, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    // the speculation is too slow, the foreground search takes over with the little time that's left
+                }
             }
+            generation.incrementAndGet();
+            speculated = null;
+            executor.submit(() -> {
+            }).get(); // runs after the stopped speculation
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
         }
-        AVandiniEliaBzGuessGame.current_game.code = args[0].toUpperCase().toCharArray();
-        System.out.println("\rThe secret code has been updated");
+        if (time_limit <= 0) {
+            return time_limit;
+        }
+        return Math.max(1, time_limit - (System.nanoTime() - start) / 1_000_000L); // 0 would mean no limit at all
     }
 }
 
 /**
- * Command to buy a letter of the secret code.
- * Reveals one letter of the code in its correct position for a cost of 5 attempts.
+ * The outcome of a {@link Solver#search(SolverStrategy, ArrayList, ArrayList, long)}.
+ *
+ * @param guess    the best guess found.
+ * @param complete whether every candidate guess was scored, false if the search ran out of time.
  */
-class CommandBuy extends Command {
+record SearchResult(char[] guess, boolean complete) {
+}
+
+/**
+ * Remembers the solver's answers for the first moves of a game.
+ * Early guesses are the most expensive ones to find since hardly any codes were ruled out yet,
+ * but there are only a few different ways the first moves of a game can go. Whenever the solver
+ * finds a guess for a game with at most {@link #MAX_DEPTH} guesses, the guess is stored here keyed
+ * by the past guesses and their feedback, and appended to the book's file so the next game
+ * (or the next start of the game) gets it for free. The book stops growing at {@link #MAX_ENTRIES}.
+ */
+class OpeningBook {
 
     /**
-     * Constructs a CommandBuy with predefined attributes.
+     * Number of past guesses up to which answers are stored, so the book covers the first three moves.
      */
-    CommandBuy() {
-        super();
-        category = CommandCategory.STORE;
-        longc = "buy";
-        shortc = "b";
-        description = "Buy one letter of the secret code at its right position. Costs 5 attempts";
-        fullName = "Buy";
-    }
+    static final int MAX_DEPTH = 2;
 
     /**
-     * Executes the buy command, revealing a single character in the correct position.
-     * Reduces the number of attempts by 5.
-     *
-     * @param args the arguments passed with the command (not used for this command).
+     * Number of entries after which no more answers are stored, keeping the book and its file small.
      */
-    void exec(String[] args) {
-        Random r = new Random();
-        char[] res_string = {'_', '_', '_', '_'};
-        int pos = r.nextInt(4); // Randomly selects a position to reveal.
-        res_string[pos] = AVandiniEliaBzGuessGame.current_game.code[pos];
+    static final int MAX_ENTRIES = 1 << 16;
 
-        // Removes possible codes that don't match the revealed letter.
-        AVandiniEliaBzGuessGame.current_game.solver.possibleCodes.removeIf(
-                n -> n[pos] != AVandiniEliaBzGuessGame.current_game.code[pos]
-        );
+    /**
+     * File the book is stored in.
+     */
+    static final String FILE_PATH = "OpeningBook.bin";
 
-        AVandiniEliaBzGuessGame.current_game.attempts_left -= 5;
-        AVandiniEliaBzGuessGame.current_game.history += AVandiniEliaBzGuessGame.current_game.attempts_left
-                + "> The User bought " + Arrays.toString(res_string) + " using up 5 attempts\n";
-        System.out.println("\r" + Arrays.toString(res_string));
+    /**
+     * Marks the start of a book file, followed by the version of the format.
+     */
+    private static final int MAGIC = 0x424F4F4B; // "BOOK"
+    private static final int VERSION = 2;
 
+    /**
+     * The entries per variant and strategy, keyed by {@link #key(Variant, ArrayList, ArrayList)} and holding packed guesses.
+     */
+    private static final Map<String, Map<Long, Integer>> books = new HashMap<>();
 
-//        not implementing this yet
-//        ArrayList<Integer> free_char_pos = new ArrayList<Integer>();
-//        for (int i = 0; i < 4; i++) {
-//            if (AVandiniEliaBzGuessGame.current_game.discovered_chars[i] == '_') {
-//                free_char_pos.add(i);
-//            }
-//        }
-//
-//        long start = System.currentTimeMillis();
-//
-//        long last_tick = System.currentTimeMillis();
-//
-//        StringBuilder[] canvas = new StringBuilder[]{
-//                new StringBuilder("                                   "),
-//                new StringBuilder("                                   "),
-//                new StringBuilder("                                   "),
-//                new StringBuilder("                                   "),
-//                new StringBuilder("                                   "),
-//                new StringBuilder("                                   "),
-//                new StringBuilder("                                   "),
-//                new StringBuilder("                                   "),
-//                new StringBuilder("                                   "),
-//        };
-//
-//        StringBuilder sequence = new StringBuilder();
-//        for (int i = 65; i < 123; i++) {
-//            sequence.append((char) i);
-//        }
-//
-//        Random r = new Random();
-//
-//        int index1 = r.nextInt(122 - 65);
-//
-//        for (StringBuilder y : canvas) {
-//            System.out.println("\r" + y);
-//        }
-//
-//
-//        while (System.currentTimeMillis() < start + 6000) {
-//            if (System.currentTimeMillis() < last_tick + ((System.currentTimeMillis() - start) / 10)) {
-//                continue;
-//            }
-//            AVandiniEliaBzGuessGame.eraseLinesUp(canvas.length);
-//            last_tick = System.currentTimeMillis();
-//
-//            int i = index1;
-//            String s = sequence.substring(i % sequence.length(), sequence.length()) + sequence.substring(0, i % sequence.length());
-//            for (int j = 0; j < 8; j++) {
-//                canvas[j + 1].setCharAt(2, s.charAt(8 - j));
-//            }
-//            index1 += 1;
-//
-//
-//            for (StringBuilder y : canvas) {
-//                System.out.println("\r" + y);
-//            }
-//
-//        }
+    private static int entries = 0; // Number of entries in every book together.
+    private static boolean rewrite = true; // Whether the file has to be written from scratch before entries can be appended to it.
+
+    /**
+     * Whether the solver uses the book, turned off by {@link Simulation} so it measures the solver itself.
+     */
+    static boolean enabled = true;
+
+    /**
+     * Returns the entries of a variant and a strategy, creating them if needed.
+     *
+     * @param variant  the variant of the game.
+     * @param strategy the name of the strategy.
+     * @return the entries.
+     */
+    private static Map<Long, Integer> book(Variant variant, String strategy) {
+        return books.computeIfAbsent(variant + "/" + strategy, n -> new HashMap<>());
+    }
+
+    /**
+     * Builds the key of a game history. Every (guess, feedback) pair is a digit of the key,
+     * and since digits start at 1 histories of different length never share a key.
+     * Big variants have so many digits that longer histories don't fit into a long, those have no key.
+     *
+     * @param variant the variant of the game.
+     * @param matches the feedback of the past guesses.
+     * @param guesses the past guesses.
+     * @return the key of the history or -1 if it doesn't fit.
+     */
+    static long key(Variant variant, ArrayList<Point> matches, ArrayList<char[]> guesses) {
+        long base = (long) variant.code_count * variant.feedback_count + 1;
+        long key = 0;
+        try {
+            for (int i = 0; i < guesses.size(); i++) {
+                key = Math.addExact(Math.multiplyExact(key, base), (long) variant.encode(guesses.get(i)) * variant.feedback_count + variant.pack(matches.get(i)) + 1);
+            }
+        } catch (ArithmeticException e) {
+            return -1;
+        }
+        return key;
+    }
+
+    /**
+     * Looks up the answer for a game history.
+     *
+     * @param variant  the variant of the game.
+     * @param strategy the strategy the answer has to come from.
+     * @param matches  the feedback of the past guesses.
+     * @param guesses  the past guesses.
+     * @return the packed guess or -1 if the book doesn't know it yet.
+     */
+    static synchronized int lookup(Variant variant, SolverStrategy strategy, ArrayList<Point> matches, ArrayList<char[]> guesses) {
+        long key = key(variant, matches, guesses);
+        if (key < 0) {
+            return -1;
+        }
+        Integer guess = book(variant, strategy.getName()).get(key);
+        return guess == null ? -1 : guess;
+    }
+
+    /**
+     * Stores the answer for a game history and appends it to the book's file.
+     * Nothing is stored once the book is full or if the history has no key.
+     *
+     * @param variant  the variant of the game.
+     * @param strategy the strategy the answer comes from.
+     * @param matches  the feedback of the past guesses.
+     * @param guesses  the past guesses.
+     * @param guess    the packed answer.
+     */
+    static synchronized void store(Variant variant, SolverStrategy strategy, ArrayList<Point> matches, ArrayList<char[]> guesses, int guess) {
+        long key = key(variant, matches, guesses);
+        if (key < 0 || entries >= MAX_ENTRIES) {
+            return;
+        }
+        Integer old = book(variant, strategy.getName()).put(key, guess);
+        if (old != null && old == guess) {
+            return;
+        }
+        if (old == null) {
+            entries++;
+        }
+        try {
+            if (rewrite) {
+                save(FILE_PATH);
+            } else {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FILE_PATH, true)))) {
+                    writeEntry(out, variant + "/" + strategy.getName(), key, guess);
+                }
+            }
+        } catch (IOException e) {
+            AVandiniEliaBzGuessGame.setAttribute(FColors.YELLOW);
+            System.out.println("\rWARNING: unable to save opening book (" + e.getMessage() + ")");
+            AVandiniEliaBzGuessGame.resetAttrributes();
+        }
+    }
+
+    /**
+     * Writes an entry of the book.
+     *
+     * @param out   the stream to write to.
+     * @param book  the variant and strategy of the entry.
+     * @param key   the key of the game history.
+     * @param guess the packed answer.
+     * @throws IOException if an error occurs during writing.
+     */
+    private static void writeEntry(DataOutputStream out, String book, long key, int guess) throws IOException {
+        out.writeUTF(book);
+        out.writeLong(key);
+        out.writeInt(guess);
+    }
 
+    /**
+     * Writes every entry of the book to a file, after which new entries are appended to it.
+     *
+     * @param filePath the path of the file.
+     * @throws IOException if an error occurs during file writing.
+     */
+    static synchronized void save(String filePath) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filePath)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (Map.Entry<String, Map<Long, Integer>> book : books.entrySet()) {
+                for (Map.Entry<Long, Integer> entry : book.getValue().entrySet()) {
+                    writeEntry(out, book.getKey(), entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        rewrite = !filePath.equals(FILE_PATH);
+    }
 
+    /**
+     * Reads the entries of a book file, replacing the ones in memory.
+     * A torn last entry is skipped and the file is written anew with the next entry, so is a file of version 1.
+     *
+     * @param filePath the path of the file.
+     * @throws IOException if an error occurs during file reading or the file is not a book.
+     */
+    static synchronized void load(String filePath) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filePath)))) {
+            int version = in.readInt() != MAGIC ? -1 : in.readInt();
+            if (version != 1 && version != VERSION) {
+                throw new IOException("not an opening book of this version");
+            }
+            Map<String, Map<Long, Integer>> res = new HashMap<>();
+            int count = 0;
+            boolean complete = version == VERSION; // keys of version 1 could have overflowed, that book is rebuilt while playing
+            try {
+                while (complete) {
+                    in.mark(1);
+                    if (in.read() < 0) {
+                        break;
+                    }
+                    in.reset();
+                    String book = in.readUTF();
+                    long key = in.readLong();
+                    int guess = in.readInt();
+                    if (res.computeIfAbsent(book, n -> new HashMap<>()).put(key, guess) == null) {
+                        count++;
+                    }
+                }
+            } catch (EOFException e) {
+                complete = false; // the last entry is torn, nothing can be appended after it
+            }
+            books.clear();
+            books.putAll(res);
+            entries = count;
+            rewrite = !complete || !filePath.equals(FILE_PATH);
+        }
     }
 }
 
 /**
- * Command to display the history of all guesses and evaluations of past games.
- * Allows users to navigate through past game details.
+ * Bounded cache of the solver's answers keyed by the set of codes that are still possible.
+ * Different guesses often leave the same codes, and the best next guess only depends on them,
+ * so games sharing a position (no matter how they got there) share the answer.
+ * The least recently used entries are dropped once the cache grows past {@link #max_bytes}.
+ * The cache is kept in {@link #FILE_PATH} between runs, next to the {@link OpeningBook}.
  */
-class CommandHistory extends Command {
+class SolverCache {
 
     /**
-     * Constructs a CommandHistory with predefined attributes.
+     * File the cache is kept in between runs.
      */
-    CommandHistory() {
-        super();
-        category = CommandCategory.INGAME;
-        longc = "history";
-        shortc = "H";
-        description = "Show history of all guesses and evaluations of past games";
-        fullName = "History";
-    }
+    static final String FILE_PATH = "SolverCache.bin";
 
     /**
-     * Executes the history command, displaying a navigable list of game histories.
-     *
-     * @param args the arguments passed with the command (not used for this command).
-     * @throws InvalidInputException if no game history is available.
+     * Marks the start of a cache file, followed by the version of the format.
      */
-    void exec(String[] args) throws InvalidInputException {
-        if (AVandiniEliaBzGuessGame.games.isEmpty()) {
-            throw new InvalidInputException("Start a game before trying to access the game history");
-        }
+    private static final int MAGIC = 0x425A5343; // "BZSC"
+    private static final int VERSION = 1;
 
+    /**
+     * Approximate number of bytes the cache may use.
+     */
+    static long max_bytes = 16L << 20;
 
-        AtomicBoolean loop = new AtomicBoolean(true);
-        AtomicBoolean cancel = new AtomicBoolean(false);
-        AtomicInteger seleciton = new AtomicInteger();
-        seleciton.set(AVandiniEliaBzGuessGame.games.size() - 1);
+    /**
+     * Whether the solver uses the cache, turned off by {@link Simulation} so it measures the solver itself.
+     */
+    static boolean enabled = true;
 
-        KeyListenenThread.keymap.clear();
-        KeyListenenThread.keymap.put(KeyCodes.ENTER.getCode(), n -> loop.set(false));
-        KeyListenenThread.keymap.put(KeyCodes.DOWN_ARROW.getCode(), n -> seleciton.getAndIncrement());
-        KeyListenenThread.keymap.put(KeyCodes.UP_ARROW.getCode(), n -> seleciton.getAndDecrement());
-        KeyListenenThread.keymap.put(KeyCodes.C.getCode(), n -> cancel.set(true));
-        KeyListenenThread.keymap.put(KeyCodes.Q.getCode(), n -> cancel.set(true));
-        KeyListenenThread.keymap.put(KeyCodes.ESCAPE.getCode(), n -> cancel.set(true));
+    /**
+     * Approximate overhead of an entry on top of the bitset of its key.
+     */
+    private static final int ENTRY_OVERHEAD = 128;
 
-        AVandiniEliaBzGuessGame.hideCursor();
-        System.out.println("\rSelect a game history to view");
-        System.out.println("\rUse Arrow keys to navigate selection, enter to view a game and C or esc to cancel");
-        System.out.println("\r");
+    static long hits = 0; // Number of lookups answered by the cache.
+    static long misses = 0; // Number of lookups the cache couldn't answer.
+    static long evictions = 0; // Number of entries dropped to stay within the memory cap.
+    private static long bytes = 0; // Approximate number of bytes used by the entries.
+    private static boolean changed = false; // Whether entries were stored since the file was read or written.
 
-        while (loop.get() && !cancel.get()) {
+    /**
+     * Identifies a position: the variant, the strategy and a snapshot of the possible codes.
+     *
+     * @param variant  the variant of the game.
+     * @param strategy the name of the strategy.
+     * @param codes    the possible codes, never modified once in the cache.
+     */
+    private record Key(Variant variant, String strategy, CandidateSet codes) {
+    }
 
-            for (int i = 0; i < AVandiniEliaBzGuessGame.games.size(); i++) {
-                StringBuilder sb = new StringBuilder("\r");
-                Game g = AVandiniEliaBzGuessGame.games.get(i);
-//                sb.append(AVandiniEliaBzGuessGame.games.size() - 1 - i).append(") ");
-                if (AVandiniEliaBzGuessGame.current_game == g) {
-                    sb.append(" @ ");
-                } else if (g.won) {
-                    sb.append(" W ");
-                } else if (g.lost) {
-                    sb.append(" L ");
-                } else {
-                    sb.append("   ");
-                }
-                if (g.lost || g.won) {
-                    sb.append(g.code).append(" | ");
-                } else {
-                    sb.append("____ | ");
-                }
-                sb.append(g.attempts_left).append(" | ");
-                sb.append(g.score).append(" | ");
-                sb.append(g.start_date);
-                if (i == seleciton.get()) {
-                    AVandiniEliaBzGuessGame.setAttribute(TextAttributes.INVERSE);
-                }
-                System.out.println(sb);
-                if (i == seleciton.get()) {
-                    AVandiniEliaBzGuessGame.resetAttrributes();
-                }
-            }
-            while (!AVandiniEliaBzGuessGame.KeyHandling()) {
-                AVandiniEliaBzGuessGame.wait(10);
-            }
-            if (seleciton.get() < 0) {
-                seleciton.set(AVandiniEliaBzGuessGame.games.size() - 1);
-            }
-            if (seleciton.get() >= AVandiniEliaBzGuessGame.games.size()) {
-                seleciton.set(0);
+    /**
+     * The entries in access order, holding packed guesses.
+     */
+    private static final LinkedHashMap<Key, Integer> entries = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Integer> eldest) {
+            if (bytes <= max_bytes) {
+                return false;
             }
-
-            AVandiniEliaBzGuessGame.eraseLinesUp(AVandiniEliaBzGuessGame.games.size());
+            bytes -= sizeOf(eldest.getKey());
+            evictions++;
+            return true;
         }
-        AVandiniEliaBzGuessGame.eraseLinesUp(3);
+    };
 
-        if (cancel.get()) {
-            AVandiniEliaBzGuessGame.showCursor();
-            return;
-        }
+    /**
+     * Estimates the memory used by an entry.
+     *
+     * @param key the key of the entry.
+     * @return the approximate size in bytes.
+     */
+    private static long sizeOf(Key key) {
+        return ENTRY_OVERHEAD + 8L * key.codes().words.length;
+    }
 
-        AtomicBoolean quit = new AtomicBoolean(false);
+    /**
+     * Looks up the answer for a position.
+     *
+     * @param variant  the variant of the game.
+     * @param strategy the strategy the answer has to come from.
+     * @param codes    the codes that are still possible.
+     * @return the packed guess or -1 if the position is not cached.
+     */
+    static synchronized int lookup(Variant variant, SolverStrategy strategy, CandidateSet codes) {
+        Integer guess = entries.get(new Key(variant, strategy.getName(), codes));
+        if (guess == null) {
+            misses++;
+            return -1;
+        }
+        hits++;
+        return guess;
+    }
 
-        KeyListenenThread.keymap.clear();
-        KeyListenenThread.keymap.put(KeyCodes.Q.getCode(), n -> quit.set(true));
-        KeyListenenThread.keymap.put(KeyCodes.C.getCode(), n -> quit.set(true));
+    /**
+     * Stores the answer for a position, evicting old entries if the cache gets too big.
+     *
+     * @param variant  the variant of the game.
+     * @param strategy the strategy the answer comes from.
+     * @param codes    the codes that are still possible, copied by this method.
+     * @param guess    the packed answer.
+     */
+    static synchronized void store(Variant variant, SolverStrategy strategy, CandidateSet codes, int guess) {
+        Key key = new Key(variant, strategy.getName(), codes.copy());
+        if (entries.put(key, guess) == null) {
+            bytes += sizeOf(key);
+        }
+        changed = true;
+    }
 
-        System.out.println("Press Q to close this game\n");
-        System.out.println("\r" + AVandiniEliaBzGuessGame.games.get(seleciton.get()).history.replace("\n", "\n\r"));
+    /**
+     * Writes every entry to a file if anything was stored since it was read, least recently used first.
+     *
+     * @param filePath the path of the file.
+     * @throws IOException if an error occurs during file writing.
+     */
+    static synchronized void save(String filePath) throws IOException {
+        if (!changed) {
+            return;
+        }
+        File tmp = new File(filePath + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<Key, Integer> entry : entries.entrySet()) {
+                Key key = entry.getKey();
+                out.writeByte(key.variant().colors);
+                out.writeByte(key.variant().pegs);
+                out.writeUTF(key.strategy());
+                for (long word : key.codes().words) {
+                    out.writeLong(word);
+                }
+                out.writeInt(entry.getValue());
+            }
+        }
+        GameSerializer.replaceFile(tmp, new File(filePath));
+        changed = false;
+    }
 
-        AVandiniEliaBzGuessGame.hideCursor();
-        while (!quit.get()) {
-            while (!AVandiniEliaBzGuessGame.KeyHandling()) {
-                AVandiniEliaBzGuessGame.wait(10);
+    /**
+     * Reads the entries of a cache file, replacing the ones in memory.
+     *
+     * @param filePath the path of the file.
+     * @throws IOException if an error occurs during file reading or the file is not a cache.
+     */
+    static synchronized void load(String filePath) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filePath)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("not a solver cache of this version");
+            }
+            ArrayList<Key> keys = new ArrayList<>();
+            ArrayList<Integer> guesses = new ArrayList<>();
+            for (int entries_left = in.readInt(); entries_left > 0; entries_left--) {
+                Variant variant;
+                try {
+                    variant = new Variant(in.readUnsignedByte(), in.readUnsignedByte());
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("invalid variant");
+                }
+                String strategy = in.readUTF();
+                CandidateSet codes = new CandidateSet(variant.code_count);
+                for (int i = 0; i < codes.words.length; i++) {
+                    codes.words[i] = in.readLong();
+                }
+                int guess = in.readInt();
+                if (guess < 0 || guess >= variant.code_count) {
+                    throw new IOException("invalid guess");
+                }
+                keys.add(new Key(variant, strategy, codes));
+                guesses.add(guess);
+            }
+            clear();
+            for (int i = 0; i < keys.size(); i++) {
+                if (entries.put(keys.get(i), guesses.get(i)) == null) {
+                    bytes += sizeOf(keys.get(i));
+                }
             }
+            changed = false;
         }
+    }
 
-        AVandiniEliaBzGuessGame.eraseLinesUp(AVandiniEliaBzGuessGame.games.get(seleciton.get()).history.split("\n").length + 3);
+    /**
+     * Drops every entry.
+     */
+    static synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+        changed = true;
+    }
 
-        exec(args);
+    /**
+     * Describes the state of the cache.
+     *
+     * @return a readable summary of the entries, memory use and counters.
+     */
+    static synchronized String stats() {
+        long lookups = hits + misses;
+        return entries.size() + " positions, " + (bytes >> 10) + "/" + (max_bytes >> 10) + " KiB, "
+                + hits + " hits, " + misses + " misses" + (lookups > 0 ? " (" + hits * 100 / lookups + "% hit rate)" : "")
+                + ", " + evictions + " evictions";
     }
 }
 
 /**
- * Command to change the cursor style during gameplay.
- * Allows users to select a different cursor style from the available options.
+ * A way of scoring guesses for the solver.
+ * Strategies only look at how a guess splits the possible codes by feedback,
+ * the counting itself is done by {@link Solver#partition(FeedbackTable, int, int[], int[])}.
  */
-class CommandChangeCursorStyle extends Command {
+interface SolverStrategy {
 
     /**
-     * Constructs a CommandChangeCursorStyle with predefined attributes.
+     * Retrieves the name used to select the strategy in commands.
+     *
+     * @return the name of the strategy.
      */
-    CommandChangeCursorStyle() {
-        super();
-        category = CommandCategory.INGAME;
-        longc = "cursor";
-        shortc = "C";
-        description = "Change cursor style (may not work on some devices)";
-        fullName = "Change Cursor Style";
-    }
+    String getName();
 
     /**
-     * Executes the command to allow the user to change the cursor style.
-     * Provides an interactive menu for selecting the style.
+     * Scores a guess by the groups it splits the possible codes into.
      *
-     * @param args the arguments passed with the command, optionally containing the style index.
-     * @throws InvalidInputException if the input is invalid or an error occurs.
+     * @param counter the number of codes per packed feedback, most entries are usually 0.
+     * @param total   the number of possible codes, which is the sum of the counter.
+     * @return the score of the guess, lower is better.
      */
-    void exec(String[] args) throws InvalidInputException {
-        AtomicInteger seleciton = new AtomicInteger(AVandiniEliaBzGuessGame.cursorStyle.getIndex());
-
-        try {
-            seleciton.set(Integer.parseInt(args[0]));
-        } catch (Exception e) {
-
-            AtomicBoolean loop = new AtomicBoolean(true);
-            AtomicBoolean cancel = new AtomicBoolean(false);
+    double score(int[] counter, int total);
+}
 
-            KeyListenenThread.keymap.clear();
-            KeyListenenThread.keymap.put(KeyCodes.ENTER.getCode(), n -> loop.set(false));
-            KeyListenenThread.keymap.put(KeyCodes.DOWN_ARROW.getCode(), n -> seleciton.getAndIncrement());
-            KeyListenenThread.keymap.put(KeyCodes.UP_ARROW.getCode(), n -> seleciton.getAndDecrement());
-            KeyListenenThread.keymap.put(KeyCodes.C.getCode(), n -> cancel.set(true));
-            KeyListenenThread.keymap.put(KeyCodes.Q.getCode(), n -> cancel.set(true));
-            KeyListenenThread.keymap.put(KeyCodes.ESCAPE.getCode(), n -> cancel.set(true));
+/**
+ * Knuth's minimax strategy: minimizes the number of codes left in the worst case.
+ */
+class MinimaxStrategy implements SolverStrategy {
 
-            System.out.println("\rSelect a cursor style to apply");
-            System.out.println("\rUse Arrow keys to navigate selection, enter to confirm, and C or ESC to cancel");
-            System.out.println("\r");
+    /**
+     * {@inheritDoc}
+     */
+    public String getName() {
+        return "minimax";
+    }
 
-            CursorStyles prev_style = AVandiniEliaBzGuessGame.cursorStyle;
+    /**
+     * Scores a guess by its biggest group.
+     * {@inheritDoc}
+     */
+    public double score(int[] counter, int total) {
+        int highest = 0;
+        for (int count : counter) {
+            if (count > highest) {
+                highest = count;
+            }
+        }
+        return highest;
+    }
+}
 
-            ArrayList<String> list = new ArrayList<>();
-            list.add("\r ● Blink Block ");
-            list.add("\r ● Blinking Block ");
-            list.add("\r ● Steady Block ");
-            list.add("\r ● Blinking Underline ");
-            list.add("\r ● Steady Underline ");
-            list.add("\r ● Blinking Bar ");
-            list.add("\r ● Steady Bar ");
+/**
+ * Minimizes the number of codes expected to be left after the guess.
+ */
+class ExpectedSizeStrategy implements SolverStrategy {
 
-            while (loop.get() && !cancel.get()) {
-                for (int i = 0; i < list.size(); i++) {
-                    if (seleciton.get() == i) {
-                        AVandiniEliaBzGuessGame.setAttribute(TextAttributes.INVERSE);
-                    }
-                    System.out.print(list.get(i));
-                    AVandiniEliaBzGuessGame.resetAttrributes();
-                    if (seleciton.get() == i) {
-                        System.out.print("  ");
-                        AVandiniEliaBzGuessGame.saveCursorPosition();
-                        AVandiniEliaBzGuessGame.setCursorStyle(Objects.requireNonNull(CursorStyles.getCursorStyles(i)));
-                    }
-                    System.out.println();
-                }
-                AVandiniEliaBzGuessGame.restoreCursorPosition();
+    /**
+     * {@inheritDoc}
+     */
+    public String getName() {
+        return "expected";
+    }
 
+    /**
+     * Scores a guess by the sum of the squared group sizes, which is proportional to the expected size.
+     * {@inheritDoc}
+     */
+    public double score(int[] counter, int total) {
+        long sum = 0;
+        for (int count : counter) {
+            sum += (long) count * count;
+        }
+        return sum;
+    }
+}
 
-//                long start = System.currentTimeMillis();
-                int prev_seleciton = seleciton.get();
-                while (!AVandiniEliaBzGuessGame.KeyHandling()) {
-                    AVandiniEliaBzGuessGame.wait(10);
-                }
-                if (seleciton.get() < 0) {
-                    seleciton.set(6);
-                }
-                if (seleciton.get() > 6) {
-                    seleciton.set(0);
-                }
+/**
+ * Maximizes the information gained by the guess.
+ */
+class EntropyStrategy implements SolverStrategy {
 
-                AVandiniEliaBzGuessGame.eraseLinesUp(prev_seleciton);
+    /**
+     * {@inheritDoc}
+     */
+    public String getName() {
+        return "entropy";
+    }
+
+    /**
+     * Scores a guess by the negated entropy of its groups.
+     * {@inheritDoc}
+     */
+    public double score(int[] counter, int total) {
+        double entropy = 0;
+        for (int count : counter) {
+            if (count > 0) {
+                double p = (double) count / total;
+                entropy -= p * log(p);
             }
-            AVandiniEliaBzGuessGame.eraseLinesUp(3);
-            AVandiniEliaBzGuessGame.eraseLinesToEndOfScreen();
+        }
+        return -entropy;
+    }
+}
 
-            if (cancel.get()) {
-                AVandiniEliaBzGuessGame.setCursorStyle(prev_style);
-            } else {
-                AVandiniEliaBzGuessGame.cursorStyle = CursorStyles.getCursorStyles(seleciton.get());
+/**
+ * Maximizes the number of different feedbacks the guess can receive.
+ */
+class MostPartsStrategy implements SolverStrategy {
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getName() {
+        return "parts";
+    }
+
+    /**
+     * Scores a guess by the negated number of non empty groups.
+     * {@inheritDoc}
+     */
+    public double score(int[] counter, int total) {
+        int parts = 0;
+        for (int count : counter) {
+            if (count > 0) {
+                parts++;
             }
         }
+        return -parts;
     }
 }
 
 /**
- * Command to enable AI to play the game for the user.
- * Automates gameplay by simulating guesses based on a minimax strategy.
+ * Follows the tree computed by {@link OptimalSearch}, which needs the fewest guesses on average.
+ * Positions the tree doesn't cover, or variants without a tree, are scored like {@link ExpectedSizeStrategy}.
  */
-class CommandAI extends Command {
+class OptimalStrategy extends ExpectedSizeStrategy {
 
     /**
-     * Constructs a CommandAI with predefined attributes.
+     * {@inheritDoc}
      */
-    CommandAI() {
-        super();
-        category = CommandCategory.STORE;
-        longc = "ai";
-        shortc = "a";
-        description = "Plays the game for you";
-        fullName = "AI";
+    public String getName() {
+        return "optimal";
     }
+}
+
+/**
+ * Describes a variant of the game: how many characters the codes are made of and how many of them make up a code.
+ * It also holds the packed representation the solver works with.
+ * A code is stored as an int holding its characters as base-N digits, N being the number of characters,
+ * with the leftmost character being the most significant digit. This also makes the packed code
+ * the index of the code in {@link CodeUniverse#codes}.
+ * A feedback is stored as an int too: the exact matches in the upper bits and the partial matches in the lower ones.
+ */
+class Variant {
 
     /**
-     * Executes the AI command, automating gameplay for the user.
-     * Simulates guesses until the game is won or lost.
+     * The classic game, 4 characters out of A to F.
+     */
+    static final Variant CLASSIC = new Variant(6, 4);
+
+    /**
+     * Biggest number of codes a variant may have.
+     */
+    static final int MAX_CODE_COUNT = 1 << 24;
+
+    final int colors; // The number of different characters.
+    final int pegs; // The number of characters in a code.
+    final char[] options; // The characters a code is made of.
+    final int code_count; // The number of different codes.
+    final int partial_bits; // The number of bits used by the partial matches of a packed feedback.
+    final int feedback_count; // Upper bound of the packed feedback values.
+
+    /**
+     * Constructs a variant.
      *
-     * @param args the arguments passed with the command (not used for this command).
+     * @param colors the number of different characters, between 2 and 16.
+     * @param pegs   the number of characters in a code, between 1 and 8.
+     * @throws IllegalArgumentException if the variant is out of range.
      */
-    void exec(String[] args) {
-        try {
-            Game g = AVandiniEliaBzGuessGame.current_game;
-            g.ai = true;
-            g.history += "Player activated AI.\n";
-            while (!g.won && !g.lost) {
-                AVandiniEliaBzGuessGame.setAttribute(new AbstarctAttributes[]{FColors.RED, TextAttributes.BRIGHT});
-                System.out.print("\r" + g.attempts_left + ">");
-                AVandiniEliaBzGuessGame.resetAttrributes();
-                char[] nextGuess = g.solver.minimaxBestGuess(g.matches, g.guesses);
-                for (char c : nextGuess) {
-                    TimeUnit.MILLISECONDS.sleep(250);
-                    System.out.print(c);
-                }
-                TimeUnit.MILLISECONDS.sleep(250);
-                String res = g.parseGuess(new String(nextGuess));
-                System.out.println(" " + res);
-                g.attempts_left--;
-                if (g.attempts_left <= 0) {
-                    g.lost = true;
-                }
-                AVandiniEliaBzGuessGame.saveGameState();
+    Variant(int colors, int pegs) {
+        if (colors < 2 || colors > 16 || pegs < 1 || pegs > 8 || pow(colors, pegs) > MAX_CODE_COUNT) {
+            throw new IllegalArgumentException("unsupported variant " + colors + "x" + pegs);
+        }
+        this.colors = colors;
+        this.pegs = pegs;
+        this.options = new char[colors];
+        for (int i = 0; i < colors; i++) {
+            options[i] = (char) ('A' + i);
+        }
+        this.code_count = (int) pow(colors, pegs);
+        // partial matches are counted per character pair, they stay below pegs^2
+        this.partial_bits = 32 - Integer.numberOfLeadingZeros(max(1, pegs * pegs - 1));
+        this.feedback_count = (pegs + 1) << partial_bits;
+    }
+
+    /**
+     * Builds the first guess of the solver, pairs of characters as in Knuth's 'AABB'.
+     *
+     * @return a new character array holding the opening guess.
+     */
+    char[] opening() {
+        char[] res = new char[pegs];
+        for (int i = 0; i < pegs; i++) {
+            res[i] = options[min(i / 2, colors - 1)];
+        }
+        return res;
+    }
+
+    /**
+     * Checks whether an input only uses characters of this variant.
+     *
+     * @param input the input, lower case letters are accepted.
+     * @return true if every character is valid.
+     */
+    boolean isValidCode(String input) {
+        for (char c : input.toCharArray()) {
+            int digit = digitOf(c);
+            if (digit < 0 || digit >= colors) {
+                return false;
             }
-        } catch (InvalidInputException e) {
-            System.out.println(e.getMessage());
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
         }
+        return true;
     }
-}
 
-class CommandBuyAI extends Command {
+    /**
+     * Lists the characters of the variant for messages, e.g. "A, B, C, D, E, or F".
+     *
+     * @return the readable list of characters.
+     */
+    String describeOptions() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < colors; i++) {
+            if (i > 0) {
+                sb.append(i == colors - 1 ? ", or " : ", ");
+            }
+            sb.append(options[i]);
+        }
+        return sb.toString();
+    }
 
-    CommandBuyAI() {
-        super();
-        category = CommandCategory.STORE;
-        longc = "bai";
-        shortc = "B";
-        description = "Uses \uD83C\uDF1FAI\uD83C\uDF1F to generate a optimal guess. Costs 5 attempts, no API key needed.";
-        fullName = "Buy AI guess";
+    /**
+     * Packs a code.
+     *
+     * @param code the code, lower case letters are accepted.
+     * @return the packed code.
+     */
+    int encode(char[] code) {
+        int res = 0;
+        for (char c : code) {
+            res = res * colors + digitOf(c);
+        }
+        return res;
     }
 
-    void exec(String[] args) throws InvalidInputException {
-        Game g = AVandiniEliaBzGuessGame.current_game;
-        g.attempts_left -= 5;
-        char[] nextGuess = g.solver.minimaxBestGuess(g.matches, g.guesses);
-        g.history += "User generated a optimal guess: " + new String(nextGuess) + ", using up 5 attempts\n";
-        String res = "\r" + "Sure, here is a optimal 4-letter guess: [" + new String(nextGuess) + "] .Let me know if you have anymore questions!";
+    /**
+     * Unpacks a code.
+     *
+     * @param code the packed code.
+     * @return a new character array holding the code.
+     */
+    char[] decode(int code) {
+        char[] res = new char[pegs];
+        for (int i = res.length - 1; i >= 0; i--) {
+            res[i] = options[code % colors];
+            code /= colors;
+        }
+        return res;
+    }
 
-        AVandiniEliaBzGuessGame.hideCursor();
-        AVandiniEliaBzGuessGame.eraseLine();
-        System.out.print(".");
-        AVandiniEliaBzGuessGame.wait(250);
-        AVandiniEliaBzGuessGame.eraseLine();
-        System.out.print("..");
-        AVandiniEliaBzGuessGame.wait(250);
-        AVandiniEliaBzGuessGame.eraseLine();
-        System.out.print("...");
-        AVandiniEliaBzGuessGame.wait(1000);
-        AVandiniEliaBzGuessGame.eraseLine();
-        AVandiniEliaBzGuessGame.wait(250);
-        System.out.print(".");
-        AVandiniEliaBzGuessGame.wait(250);
-        AVandiniEliaBzGuessGame.eraseLine();
-        System.out.print("..");
-        AVandiniEliaBzGuessGame.wait(250);
-        AVandiniEliaBzGuessGame.eraseLine();
-        System.out.print("...");
-        AVandiniEliaBzGuessGame.wait(1000);
-        AVandiniEliaBzGuessGame.eraseLine();
-        AVandiniEliaBzGuessGame.fancyprint(res);
+    /**
+     * Converts a character into its digit.
+     *
+     * @param c the character, lower case letters are accepted.
+     * @return the digit of the character.
+     */
+    static int digitOf(char c) {
+        return Character.toUpperCase(c) - 'A';
     }
-}
 
-/**
- * Command to count the remaining possible solutions based on feedback from guesses.
- * Costs 2 attempts and updates the game history with the count.
- */
-class CommandRemains extends Command {
+    /**
+     * Extracts the digit at a position of a packed code.
+     *
+     * @param code the packed code.
+     * @param pos  the position, 0 being the leftmost character.
+     * @return the digit at the given position.
+     */
+    int digit(int code, int pos) {
+        for (int i = pos + 1; i < pegs; i++) {
+            code /= colors;
+        }
+        return code % colors;
+    }
 
     /**
-     * Constructs a CommandRemains with predefined attributes.
+     * Calculates the feedback of a guess against a code without touching the heap.
+     * Exact matches are counted digit by digit, every other digit goes into a per-character histogram
+     * with 4 bits per character. Like {@link Game#checkGuess(Variant, char[], char[])} always did, partial matches
+     * are counted per pair of characters, so they are the product of both histograms for each character.
+     *
+     * @param code  the packed secret code.
+     * @param guess the packed guess.
+     * @return the packed feedback, always smaller than {@link #feedback_count}.
+     */
+    int feedback(int code, int guess) {
+        int exact = 0;
+        long code_hist = 0;
+        long guess_hist = 0;
+        for (int i = 0; i < pegs; i++) {
+            int c = code % colors;
+            int g = guess % colors;
+            if (c == g) {
+                exact++;
+            } else {
+                code_hist += 1L << (c << 2);
+                guess_hist += 1L << (g << 2);
+            }
+            code /= colors;
+            guess /= colors;
+        }
+        int partial = 0;
+        while (code_hist != 0 && guess_hist != 0) {
+            partial += (int) (code_hist & 15) * (int) (guess_hist & 15);
+            code_hist >>>= 4;
+            guess_hist >>>= 4;
+        }
+        return exact << partial_bits | partial;
+    }
+
+    /**
+     * Extracts the number of exact matches from a packed feedback.
+     *
+     * @param feedback the packed feedback.
+     * @return the number of characters at the right position.
      */
-    CommandRemains() {
-        super();
-        category = CommandCategory.STORE;
-        longc = "remains";
-        shortc = "R";
-        description = "Counts available solutions based on the guess's feedback. Costs 2 attempts";
-        fullName = "Remains";
+    int exact(int feedback) {
+        return feedback >>> partial_bits;
     }
 
     /**
-     * Executes the command to count possible solutions based on feedback from previous guesses.
+     * Extracts the number of partial matches from a packed feedback.
      *
-     * @param args the arguments passed with the command (not used for this command).
-     * @throws InvalidInputException if an error occurs during solution counting.
+     * @param feedback the packed feedback.
+     * @return the number of characters at the wrong position.
      */
-    void exec(String[] args) throws InvalidInputException {
-        Game g = AVandiniEliaBzGuessGame.current_game;
-        int solution_count = g.solver.reduceCodes(g.matches, g.guesses);
-        g.attempts_left -= 2;
-        g.history += "Game counted " + solution_count + " possible solutions still available based on guess feedback. 2 attempts were used up\n";
-        String res = "\r" + "Based on past guesses' feedback, there are " + solution_count + " viable solutions.";
-        AVandiniEliaBzGuessGame.fancyprint(res);
+    int partial(int feedback) {
+        return feedback & ((1 << partial_bits) - 1);
     }
-}
 
-/**
- * Command to grant the player (almost) unlimited attempts.
- * This is categorized as a secret command and is primarily for debugging or cheating.
- */
-class CommandUnlimitedAttempts extends Command {
+    /**
+     * Packs a feedback point.
+     *
+     * @param p the feedback, `x` being exact and `y` being partial matches.
+     * @return the packed feedback.
+     */
+    int pack(Point p) {
+        return p.x << partial_bits | p.y;
+    }
 
     /**
-     * Constructs a CommandUnlimitedAttempts with predefined attributes.
+     * Unpacks a feedback into a point.
+     *
+     * @param feedback the packed feedback.
+     * @return a new Point, `x` being exact and `y` being partial matches.
      */
-    CommandUnlimitedAttempts() {
-        super();
-        category = CommandCategory.SECRET;
-        longc = "unlimited";
-        shortc = "u";
-        description = "Gives you (almost) unlimited attempts";
-        fullName = "Unlimited Attempts";
+    Point toPoint(int feedback) {
+        return new Point(exact(feedback), partial(feedback));
     }
 
     /**
-     * Executes the command to grant the player an extremely high number of attempts.
+     * Generates a string representation of the variant.
      *
-     * @param args the arguments passed with the command (not used for this command).
-     * @throws InvalidInputException if an error occurs while processing the command.
+     * @return the variant in the format colors x pegs, e.g. "6x4".
      */
-    void exec(String[] args) throws InvalidInputException {
-        Game g = AVandiniEliaBzGuessGame.current_game;
-        g.attempts_left = Long.MAX_VALUE;
+    @Override
+    public String toString() {
+        return colors + "x" + pegs;
+    }
+
+    /**
+     * Checks whether this Variant is equal to another object.
+     *
+     * @param obj the object to compare against.
+     * @return {@code true} if the object is a Variant with the same colors and pegs.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Variant v)) {
+            return false;
+        }
+        return colors == v.colors && pegs == v.pegs;
+    }
+
+    /**
+     * Generates a hash code for this Variant.
+     *
+     * @return the hash code value for this Variant.
+     */
+    @Override
+    public int hashCode() {
+        return 31 * colors + pegs;
     }
 }
 
 /**
- * Represents a single game instance.
- * Manages the gameplay loop, the secret code, attempts, score, and game history.
+ * Lookup table holding the feedback of every possible guess against every possible code of a variant.
+ * The table is built once per process the first time the solver needs it, after that
+ * scoring a guess is just a matter of reading bytes instead of comparing characters.
+ * Variants with more than {@link #MAX_TABLE_CODES} codes would need too much memory,
+ * for them the feedback is calculated on the fly by {@link Variant#feedback(int, int)}.
+ * Codes are addressed by their packed value.
  */
-class Game implements Serializable {
-    char[] code = new char[4]; // The secret code for the game.
-    long attempts_left = 20L; // The number of attempts the player has left.
-    String history = ""; // The history of guesses and feedback.
-    boolean won = false; // Indicates if the game is won.
-    boolean lost = false; // Indicates if the game is lost.
-    Date start_date = new Date(); // The start date of the game.
-    long score = 0; // The player's score.
-    Solver solver = new Solver(); // The solver instance for generating guesses and solutions.
-    ArrayList<Point> matches = new ArrayList<>(); // The list of feedback points for guesses.
-    ArrayList<char[]> guesses = new ArrayList<>(); // The list of guesses made by the player.
-    boolean ai = false; // Indicates if the AI is playing.
-    char[] discovered_chars = {'_', '_', '_', '_'}; // Partially discovered characters in the code.
+class FeedbackTable {
 
-    TextBox textBox = new TextBox(); // The text box for player input.
+    /**
+     * Biggest number of codes a variant may have for its table to be built (16 MB for 4096 codes).
+     */
+    static final int MAX_TABLE_CODES = 4096;
 
     /**
-     * Constructs a new Game instance with a randomly generated secret code.
+     * The tables built so far, one per variant.
      */
-    public Game() {
-        Random r = new Random();
-        for (int i = 0; i < 4; i++) {
-            code[i] = AVandiniEliaBzGuessGame.options[r.nextInt(AVandiniEliaBzGuessGame.options.length)];
-        }
-    }
+    private static final Map<Variant, FeedbackTable> tables = new HashMap<>();
 
     /**
-     * Starts the game by initializing history and entering the game loop.
+     * The variant the table belongs to.
      */
-    void startGame() {
-        this.history = "Game started at " + start_date + '\n';
-        this.gameloop();
-    }
+    final Variant variant;
 
     /**
-     * Executes the main game loop.
-     * Continuously processes player turns until the game is won or lost.
-     * Saves the game state after each turn.
+     * The feedback bytes, row major: the entry for (guess, code) is at {@code guess * code_count + code}.
+     * Null if the variant is too big.
      */
-    void gameloop() {
-        while (!lost && !won) {
+    private final byte[] table;
 
-            execeTurn();
-            AVandiniEliaBzGuessGame.saveGameState();
-            if (AVandiniEliaBzGuessGame.current_game != this) {
-                return; // Exit loop if the current game has changed.
+    /**
+     * Builds the table of a variant.
+     *
+     * @param variant the variant.
+     */
+    private FeedbackTable(Variant variant) {
+        this.variant = variant;
+        int n = variant.code_count;
+        if (n > MAX_TABLE_CODES || variant.feedback_count > 256) {
+            table = null;
+            return;
+        }
+        table = new byte[n * n];
+        for (int guess = 0; guess < n; guess++) {
+            for (int code = 0; code < n; code++) {
+                table[guess * n + code] = (byte) variant.feedback(code, guess);
             }
         }
-        finishGame();
     }
 
     /**
-     * Executes a single turn in the game.
-     * Parses player input and checks if the game has been lost due to running out of attempts.
+     * Returns the feedback table of a variant, building it on the first call.
+     *
+     * @param variant the variant.
+     * @return the feedback table.
      */
-    void execeTurn() {
-        parseInput();
-        if (attempts_left <= 0 && !won && !ai) {
-            lost = true;
-        }
+    static synchronized FeedbackTable of(Variant variant) {
+        return tables.computeIfAbsent(variant, FeedbackTable::new);
     }
 
     /**
-     * Prompts the player for input and returns the entered string.
+     * Looks up the feedback a guess would receive against a code.
      *
-     * @return the player's input.
+     * @param guess the packed guess.
+     * @param code  the packed secret code.
+     * @return the packed feedback.
      */
-    String askInput() {
-        Scanner sc = new Scanner(System.in);
-        AVandiniEliaBzGuessGame.setAttribute(new AbstarctAttributes[]{FColors.GREEN, TextAttributes.BRIGHT});
-        System.out.print(attempts_left + ">");
-        AVandiniEliaBzGuessGame.resetAttrributes();
-        return sc.nextLine();
+    int feedback(int guess, int code) {
+        if (table == null) {
+            return variant.feedback(code, guess);
+        }
+        return table[guess * variant.code_count + code] & 0xFF;
     }
 
     /**
-     * Parses a command entered by the player and executes it.
+     * Builds the set of codes that would give a certain feedback to a guess.
      *
-     * @param input the command to parse.
-     * @param args  the arguments for the command.
-     * @throws InvalidInputException if the command is invalid or unknown.
-     */
-    void parseCommand(String input, String[] args) throws InvalidInputException {
-        for (Command command : AVandiniEliaBzGuessGame.comands) {
-            if (command.shortc.equals(input) || command.longc.equalsIgnoreCase(input)) {
-                command.exec(args);
-                AVandiniEliaBzGuessGame.saveGameState();
-                return;
+     * @param guess    the packed guess.
+     * @param feedback the packed feedback.
+     * @return a new set holding every matching code.
+     */
+    CandidateSet mask(int guess, int feedback) {
+        CandidateSet res = new CandidateSet(variant.code_count);
+        for (int code = 0; code < variant.code_count; code++) {
+            if (feedback(guess, code) == feedback) {
+                res.add(code);
             }
         }
-        throw new InvalidInputException("Unknown command");
+        return res;
     }
 
     /**
-     * Parses player input and determines whether it's a command or a guess.
-     * Handles validation and feedback for guesses.
-     */
-    void parseInput() {
-        String input = "";
-        try {
-            input = textBox.get_input(this);
-            if (lost || won || ai || AVandiniEliaBzGuessGame.current_game != this) {
-                return;
-            }
-            if (input.isEmpty()) {
-                throw new InvalidInputException("Please input a command or a 4-character sequence");
-            }
-            if (input.charAt(0) == '.') {
-                String temp = input.substring(1);
-                String[] args = temp.split(" ");
-                parseCommand(args[0], Arrays.copyOfRange(args, 1, args.length));
-                return;
-            }
-            if (input.length() != 4) {
-                throw new InvalidInputException("Input must be 4 characters long");
-            }
-            if (input.matches(".*[^ABCDEFabcdef].*")) {
-                throw new InvalidInputException("Input must consist of A, B, C, D, E, or F");
-            }
-//            AVandiniEliaBzGuessGame.eraseLine();
-            AVandiniEliaBzGuessGame.eraseLinesUp(1);
-            AVandiniEliaBzGuessGame.setAttribute(new AbstarctAttributes[]{FColors.GREEN, TextAttributes.BRIGHT});
-            System.out.print("\r" + attempts_left + "> ");
-            AVandiniEliaBzGuessGame.resetAttrributes();
-            System.out.println(input + " " + parseGuess(input));
-            attempts_left--;
-            if (attempts_left <= 0) {
-                lost = true;
+     * Builds the set of codes having a certain character at a certain position.
+     *
+     * @param pos the position of the character, 0 being the leftmost one.
+     * @param c   the character.
+     * @return a new set holding every matching code.
+     */
+    CandidateSet positionMask(int pos, char c) {
+        int digit = Variant.digitOf(c);
+        CandidateSet res = new CandidateSet(variant.code_count);
+        for (int code = 0; code < variant.code_count; code++) {
+            if (variant.digit(code, pos) == digit) {
+                res.add(code);
             }
-        } catch (InvalidInputException e) {
-            handleInputError(input, e);
         }
+        return res;
     }
+}
+
+/**
+ * Every code of a variant, built once per process when it is first needed and shared by all solvers and strategies.
+ * Solvers refer to codes by their index, which is also their packed value, so new games don't have to
+ * generate any codes. Nothing in here may be modified.
+ */
+class CodeUniverse {
 
     /**
-     * Handles errors during input parsing, providing feedback to the player.
-     *
-     * @param input the invalid input provided by the player.
-     * @param e     the exception containing the error message.
+     * The universes built so far, one per variant.
      */
-    private void handleInputError(String input, InvalidInputException e) {
-        AVandiniEliaBzGuessGame.eraseLinesUp(1);
-        AVandiniEliaBzGuessGame.setAttribute(TextAttributes.BRIGHT);
-        AVandiniEliaBzGuessGame.setAttribute(FColors.RED);
-        System.out.print(e.getMessage());
-        AVandiniEliaBzGuessGame.setAttribute(TextAttributes.RESET);
-
-        long start = System.currentTimeMillis();
-        long last_tick = System.currentTimeMillis();
+    private static final Map<Variant, CodeUniverse> universes = new HashMap<>();
 
-        AVandiniEliaBzGuessGame.hideCursor();
+    /**
+     * The variant the codes belong to.
+     */
+    final Variant variant;
 
-        while (System.currentTimeMillis() < start + 3000) {
-            if (System.currentTimeMillis() < last_tick + 1) {
-                continue;
-            }
-            last_tick = System.currentTimeMillis();
-            if (!KeyListenenThread.active_keys.isEmpty()) {
-                break;
-            }
-            AVandiniEliaBzGuessGame.eraseLine();
+    /**
+     * Every packed code in ascending order, so {@code codes[i] == i}.
+     */
+    final int[] codes;
 
-            AVandiniEliaBzGuessGame.setAttribute(new AbstarctAttributes[]{FColors.GREEN, TextAttributes.BRIGHT});
-            System.out.print(attempts_left + "> ");
-            AVandiniEliaBzGuessGame.resetAttrributes();
-            AVandiniEliaBzGuessGame.setAttribute(TextAttributes.UNDERLINE);
-            System.out.print(input);
-            AVandiniEliaBzGuessGame.resetAttrributes();
-            if (System.currentTimeMillis() % 1000 < 500) {
-                AVandiniEliaBzGuessGame.setAttribute(TextAttributes.BRIGHT);
-            }
-            AVandiniEliaBzGuessGame.setAttribute(FColors.RED);
-            System.out.print(" " + e.getMessage());
-            AVandiniEliaBzGuessGame.setAttribute(TextAttributes.RESET);
-        }
-        AVandiniEliaBzGuessGame.showCursor();
-        parseInput();
-    }
+    /**
+     * The set holding every code, the starting point of every solver.
+     */
+    final CandidateSet all;
 
     /**
-     * Parses a player's guess and provides feedback in the form of X (correct position)
-     * and - (correct character, wrong position). Updates the game's history.
+     * Builds the universe of a variant.
      *
-     * @param input the player's guess.
-     * @return a string representing the feedback.
+     * @param variant the variant.
      */
-    String parseGuess(String input) {
-        Point p = checkGuess(code, input.toCharArray());
-        StringBuilder result = new StringBuilder();
-        result.append("X".repeat(p.x));
-        result.append("-".repeat(p.y));
-        matches.add(p);
-        guesses.add(input.toCharArray());
-        if (p.x >= 4) {
-            won = true;
+    private CodeUniverse(Variant variant) {
+        this.variant = variant;
+        codes = new int[variant.code_count];
+        for (int code = 0; code < codes.length; code++) {
+            codes[code] = code;
         }
-        AVandiniEliaBzGuessGame.current_game.history += attempts_left + "> " + input + " " + result + '\n';
-        return result.toString();
+        all = CandidateSet.full(variant.code_count);
     }
 
     /**
-     * Compares a guess against the secret code and determines feedback.
-     * Feedback is provided in terms of the number of exact matches (X) and partial matches (-).
+     * Returns the universe of a variant, building it on the first call.
      *
-     * @param code  the secret code.
-     * @param guess the player's guess.
-     * @return a Point object where `x` represents exact matches and `y` represents partial matches.
+     * @param variant the variant.
+     * @return the universe.
      */
-    static Point checkGuess(char[] code, char[] guess) {
-        Point p = new Point(0, 0);
-        boolean[] cleared = {false, false, false, false};
-        for (int j = 0; j < 4; j++) {
-            if (code[j] == Character.toUpperCase(guess[j])) {
-                cleared[j] = true;
-                p.x++;
-            }
-        }
-        for (int j = 0; j < 4; j++) {
-            for (int k = 0; k < 4; k++) {
-                if (cleared[k] || cleared[j]) {
-                    continue;
-                }
-                if (code[k] == Character.toUpperCase(guess[j])) {
-                    p.y++;
-                }
-            }
-        }
-        return p;
+    static synchronized CodeUniverse of(Variant variant) {
+        return universes.computeIfAbsent(variant, CodeUniverse::new);
     }
+}
+
+/**
+ * A set of code indices backed by a bitset, one bit per code.
+ * Used by the solver to keep track of the codes that are still possible,
+ * filtering it is done by intersecting it with other sets.
+ */
+class CandidateSet {
 
     /**
-     * Calculates the score based on time and attempts left.
+     * The bits of the set, bit `i % 64` of word `i / 64` stands for the code with index `i`.
+     */
+    final long[] words;
+
+    /**
+     * Number of codes the set can hold.
+     */
+    final int capacity;
+
+    /**
+     * Constructs an empty set.
      *
-     * @param time          the time taken
-     * @param attempts_left the remaining attempts
-     * @return the calculated score
+     * @param capacity the number of codes the set can hold.
      */
-    static long score_calc(long time, long attempts_left) {
+    CandidateSet(int capacity) {
+        this.capacity = capacity;
+        this.words = new long[(capacity + 63) >>> 6];
+    }
 
-        // prevents absurd scores when using cheat commands
-        if (attempts_left > 19
-        ) {
-            attempts_left = 19;
-        }
-        double secs_per_attempt = (double) time / (20 - attempts_left) / 1000;
-        if (secs_per_attempt > 60) {
-            secs_per_attempt = 60;
+    /**
+     * Constructs a set holding every code.
+     *
+     * @param capacity the number of codes the set can hold.
+     * @return the new set.
+     */
+    static CandidateSet full(int capacity) {
+        CandidateSet res = new CandidateSet(capacity);
+        Arrays.fill(res.words, -1L);
+        if ((capacity & 63) != 0) {
+            res.words[res.words.length - 1] = (1L << capacity) - 1; // shifts only use the lower 6 bits
         }
-        double score = ((pow(secs_per_attempt, 2) / 180) - (secs_per_attempt * (13f / 20f)) + 20); // x^2/180 - x*13/20 + 20
-        return (long) (score * 10) * (attempts_left * 10);
+        return res;
     }
 
     /**
-     * Finalizes the game by saving the game state and displaying results.
-     * Prompts the player with a win or lose screen based on the game outcome.
+     * Adds a code to the set.
+     *
+     * @param index the index of the code.
      */
-    void finishGame() {
-        if (won) {
-            long diff = abs(new Date().getTime() - this.start_date.getTime());
-            score = score_calc(diff, attempts_left);
-            if (score > AVandiniEliaBzGuessGame.highscore && !AVandiniEliaBzGuessGame.current_game.ai) {
-                AVandiniEliaBzGuessGame.highscore = score;
-            }
-            if (AVandiniEliaBzGuessGame.current_game.ai) {
-                AVandiniEliaBzGuessGame.aiWinScreen();
-                AVandiniEliaBzGuessGame.current_game.score = 0;
-            } else {
-                AVandiniEliaBzGuessGame.winScreen();
-            }
-        } else {
-            score = 0;
-            if (AVandiniEliaBzGuessGame.current_game.ai) {
-                AVandiniEliaBzGuessGame.aiLooseScreen();
-            } else {
-                AVandiniEliaBzGuessGame.loosescreen();
-            }
-        }
+    void add(int index) {
+        words[index >>> 6] |= 1L << index;
     }
-}
 
-/**
- * Represents a solver for the game, implementing logic to minimize
- * the number of guesses needed to identify a secret code.
- */
-class Solver implements Serializable {
+    /**
+     * Removes a code from the set.
+     *
+     * @param index the index of the code.
+     */
+    void remove(int index) {
+        words[index >>> 6] &= ~(1L << index);
+    }
 
     /**
-     * List of all possible codes that can be generated in the game.
+     * Checks whether a code is part of the set.
+     *
+     * @param index the index of the code.
+     * @return true if the code is in the set.
      */
-    ArrayList<char[]> possibleCodes;
+    boolean contains(int index) {
+        return (words[index >>> 6] & 1L << index) != 0;
+    }
 
     /**
-     * Constructor for the Solver class. Initializes the possible codes.
+     * Counts the codes in the set.
+     *
+     * @return the number of codes in the set.
      */
-    Solver() {
-        possibleCodes = getPopulateCodes();
+    int size() {
+        int res = 0;
+        for (long word : words) {
+            res += Long.bitCount(word);
+        }
+        return res;
     }
 
     /**
-     * Generates all possible unique codes using the predefined game options.
+     * Finds the first code in the set with an index equal or greater than the given one.
+     * Iterating a set is done with {@code for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1))}.
      *
-     * @return An ArrayList containing all possible combinations of game codes.
+     * @param from the index to start searching from.
+     * @return the index of the next code or -1 if there is none.
      */
-    static ArrayList<char[]> getPopulateCodes() {
-        ArrayList<char[]> genCodes = new ArrayList<>();
-        for (int i = 0; i < 6; i++) {
-            for (int j = 0; j < 6; j++) {
-                for (int k = 0; k < 6; k++) {
-                    for (int l = 0; l < 6; l++) {
-                        char[] newCode = new char[]{AVandiniEliaBzGuessGame.options[i], AVandiniEliaBzGuessGame.options[j], AVandiniEliaBzGuessGame.options[k], AVandiniEliaBzGuessGame.options[l]};
-                        boolean duplicate = false;
-                        for (char[] existing : genCodes) {
-                            if (Arrays.equals(existing, newCode)) {
-                                duplicate = true;
-                                break;
-                            }
-                        }
-                        if (!duplicate) {
-                            genCodes.add(newCode);
-                        }
-                    }
-                }
+    int nextSetBit(int from) {
+        int w = from >>> 6;
+        if (w >= words.length) {
+            return -1;
+        }
+        long word = words[w] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++w == words.length) {
+                return -1;
             }
+            word = words[w];
         }
-        return genCodes;
     }
 
     /**
-     * Simulates the game using a given code and guesses, returning the results
-     * for each guess.
+     * Removes every code that is not part of the other set.
      *
-     * @param code    The secret code to be guessed.
-     * @param guesses A list of guesses to be evaluated.
-     * @return An ArrayList of results (as Points) for each guess.
+     * @param other the set to intersect with.
      */
-    static ArrayList<Point> mockGame(char[] code, ArrayList<char[]> guesses) {
-        ArrayList<Point> res = new ArrayList<Point>();
-        for (int i = 0; i < guesses.size(); i++) {
-            res.add(Game.checkGuess(code, guesses.get(i)));
+    void and(CandidateSet other) {
+        for (int i = 0; i < words.length; i++) {
+            words[i] &= other.words[i];
         }
-        return res;
     }
 
     /**
-     * Compares match results between two games to check for consistency.
+     * Creates an independent copy of the set.
      *
-     * @param code    The secret code to be checked.
-     * @param p1      The first list of match results to compare.
-     * @param guesses The list of guesses used in the comparison.
-     * @return True if the matches are not equal, false otherwise.
+     * @return the new set.
      */
-    static boolean equalMatches(char[] code, ArrayList<Point> p1, ArrayList<char[]> guesses) {
-        ArrayList<Point> p2 = mockGame(code, guesses);
-        boolean res = p1.equals(p2);
-        return !res;
+    CandidateSet copy() {
+        CandidateSet res = new CandidateSet(capacity);
+        System.arraycopy(words, 0, res.words, 0, words.length);
+        return res;
     }
 
     /**
-     * Reduces the set of possible codes based on match results and guesses.
+     * Checks whether this set holds the same codes as another object.
      *
-     * @param matches The list of match results.
-     * @param guesses The list of guesses corresponding to the matches.
-     * @return The size of the remaining possible codes.
-     * @throws InvalidInputException If the size of matches and guesses differ.
+     * @param obj the object to compare against.
+     * @return {@code true} if the object is a CandidateSet with the same capacity and codes.
      */
-    int reduceCodes(ArrayList<Point> matches, ArrayList<char[]> guesses) throws InvalidInputException {
-        if (matches.size() != guesses.size()) {
-            throw new InvalidInputException("param size mismatch");
-        }
-        if (matches.isEmpty()) {
-            return possibleCodes.size();
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof CandidateSet other)) {
+            return false;
         }
-//        populateCodes();
-        possibleCodes.removeIf(n -> equalMatches(n, matches, guesses));
-        return possibleCodes.size();
+        return capacity == other.capacity && Arrays.equals(words, other.words);
     }
 
     /**
-     * Determines the best guess using the minimax strategy.
-     * This code is based on <a href="https://en.wikipedia.org/wiki/Mastermind_(board_game)#Worst_case:_Five-guess_algorithm">Donald Knuth's algorithm for codebreaking mastermind</a>
+     * Generates a hash code from the codes in the set.
      *
-     * @param matches The list of match results.
-     * @param guesses The list of previous guesses.
-     * @return The best guess as a character array.
-     * @throws InvalidInputException If the size of matches and guesses differ.
+     * @return the hash code value for this set.
      */
-    char[] minimaxBestGuess(ArrayList<Point> matches, ArrayList<char[]> guesses) throws InvalidInputException {
-//        System.out.println("\r" + possibleCodes.size());
-        if (matches.size() != guesses.size()) {
-            throw new InvalidInputException("param size mismatch");
-        }
-        if (matches.isEmpty() && possibleCodes.size() == 1296) {
-            return new char[]{'A', 'A', 'B', 'B'};
-        }
-        reduceCodes(matches, guesses);
-        if (possibleCodes.size() == 1) {
-            return possibleCodes.getFirst();
-        }
-        int lowest_worst_score = Integer.MAX_VALUE;
-        char[] lowest_worst_score_code = new char[]{'A', 'A', 'B', 'B'};
-        for (char[] guess : getPopulateCodes()) {
-//            if (guesses.contains(guess)) {
-//                continue;
-//            }
-            Map<Point, Integer> counter = new HashMap<>();
-            for (char[] code : possibleCodes) {
-                Point p = Game.checkGuess(code, guess);
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(words);
+    }
 
-                counter.put(p, counter.getOrDefault(p, 0) + 1);
-            }
-            int highest;
-            if (counter.values().stream().max(Integer::compare).isPresent()) {
-                highest = counter.values().stream().max(Integer::compare).get();
-                if (highest < lowest_worst_score) {
-                    lowest_worst_score_code = guess;
-                    lowest_worst_score = highest;
-                }
+    /**
+     * Lists the indices of the codes in the set in ascending order.
+     *
+     * @return an array holding the index of every code in the set.
+     */
+    int[] toArray() {
+        int[] res = new int[size()];
+        int n = 0;
+        for (int w = 0; w < words.length; w++) {
+            long word = words[w];
+            while (word != 0) {
+                res[n++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
             }
         }
-//        System.out.println("\r" + possibleCodes.size());
-        return lowest_worst_score_code;
+        return res;
     }
 }
 
@@ -2559,7 +8090,7 @@ class KeyListenenThread extends Thread {
  * Represents a text box with features for text manipulation, cursor movement,
  * and command mode operations. Handles user input and history cycling.
  */
-class TextBox implements Serializable {
+class TextBox {
 
     /**
      * The main text content of the text box.